@@ -0,0 +1,58 @@
+package com.tibudget.api;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking companion of {@link InternetProvider}.
+ * <p>
+ * Each method returns immediately and the request is executed by the host, so a collector can
+ * issue independent requests (account pages, invoice PDFs, etc.) without waiting for each one in turn.
+ * Failures complete the returned future exceptionally with the {@link java.io.IOException} that the
+ * blocking call would have thrown.
+ * <p>
+ * The number of requests running at the same time for a collector is bounded by {@link #getMaxConcurrency()},
+ * extra requests are queued and started in submission order.
+ */
+public interface AsyncInternetProvider {
+
+    /**
+     * Performs an HTTP GET request asynchronously.
+     *
+     * @param url     Full URL to request.
+     * @param headers Optional HTTP headers.
+     * @return A future completed with the response including body, headers
+     * @see InternetProvider#get(String, Map)
+     */
+    CompletableFuture<InternetProvider.Response> get(String url, Map<String, String> headers);
+
+    /**
+     * Performs an HTTP POST request with a text payload asynchronously.
+     *
+     * @param url     Full URL to post to.
+     * @param body    The request body, typically a JSON or form string.
+     * @param contentType Content type of the body
+     * @param headers Optional HTTP headers.
+     * @return A future completed with the response including body, headers
+     * @see InternetProvider#post(String, String, String, Map)
+     */
+    CompletableFuture<InternetProvider.Response> post(String url, String body, String contentType, Map<String, String> headers);
+
+    /**
+     * Downloads a file asynchronously.
+     *
+     * @param url         The URL of the file to download.
+     * @param headers     Optional headers to include in the request.
+     * @param forceContentType Expected mime type of the document, e.g. "application/pdf".
+     * @return A future completed with the response including body (the full path where the file has been stored), headers
+     * @see InternetProvider#downloadFile(String, Map, String)
+     */
+    CompletableFuture<InternetProvider.Response> downloadFile(String url, Map<String, String> headers, String forceContentType);
+
+    /**
+     * Returns the maximum number of requests executed at the same time for this collector.
+     *
+     * @return the concurrency limit, always greater than 0
+     */
+    int getMaxConcurrency();
+}
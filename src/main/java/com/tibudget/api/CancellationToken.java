@@ -0,0 +1,64 @@
+package com.tibudget.api;
+
+import com.tibudget.api.exceptions.CollectCancelled;
+
+/**
+ * Tells a collector that it must stop, either because the host cancelled the collect or because its deadline has passed.
+ * <p>
+ * Cancellation is cooperative: the collector checks the token between units of work (pages, accounts, files) with
+ * {@link #throwIfCancelled()}, and the providers given by the host fail fast once the token is cancelled.
+ * Results collected before the cancellation are still read by the host through the getters of {@link CollectorPlugin}.
+ */
+public interface CancellationToken {
+
+    /** Token that is never cancelled and has no deadline. */
+    CancellationToken NONE = new CancellationToken() {
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public long getDeadline() {
+            return Long.MAX_VALUE;
+        }
+    };
+
+    /**
+     * Indicates whether the collect must stop, the deadline being passed counts as a cancellation.
+     *
+     * @return {@code true} if the collect must stop
+     */
+    boolean isCancelled();
+
+    /**
+     * Returns the time at which the collect will be cancelled.
+     *
+     * @return the deadline in milliseconds since the epoch, or {@link Long#MAX_VALUE} if there is none
+     */
+    long getDeadline();
+
+    /**
+     * Returns the time left before the deadline, useful to bound a wait.
+     *
+     * @return the remaining time in milliseconds, {@code 0} if cancelled, {@link Long#MAX_VALUE} if there is no deadline
+     */
+    default long getRemainingMillis() {
+        if (isCancelled()) {
+            return 0;
+        }
+        long deadline = getDeadline();
+        return deadline == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(0, deadline - System.currentTimeMillis());
+    }
+
+    /**
+     * Stops the collect if it has been cancelled.
+     *
+     * @throws CollectCancelled if the token is cancelled
+     */
+    default void throwIfCancelled() throws CollectCancelled {
+        if (isCancelled()) {
+            throw new CollectCancelled("error.collect.cancelled");
+        }
+    }
+}
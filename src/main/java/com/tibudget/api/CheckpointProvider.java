@@ -0,0 +1,42 @@
+package com.tibudget.api;
+
+import com.tibudget.api.exceptions.CollectError;
+import com.tibudget.dto.CheckpointDto;
+
+import java.util.List;
+
+/**
+ * Stores collect checkpoints so that an interrupted collect resumes instead of starting over.
+ * <p>
+ * A collector saves a checkpoint each time it has emitted a consistent amount of work, for example after each
+ * page of transactions. If the collect fails, the next attempt gets the saved checkpoints back and skips what has
+ * already been emitted. Once a collect succeeds, the host discards the checkpoints.
+ * <p>
+ * When transactions are pushed to a {@link TransactionSink}, the sink must be flushed before saving the checkpoint
+ * covering them, so that a checkpoint never refers to transactions the host has not received.
+ */
+public interface CheckpointProvider {
+
+    /**
+     * Saves a checkpoint atomically, replacing the previous checkpoint of the same account.
+     *
+     * @param checkpoint the checkpoint to save
+     * @throws CollectError if the checkpoint cannot be saved
+     */
+    void save(CheckpointDto checkpoint) throws CollectError;
+
+    /**
+     * Returns the checkpoint of an account saved by a previous, interrupted, attempt.
+     *
+     * @param accountUuid the account UUID, {@code null} for the checkpoint covering the whole configuration
+     * @return the checkpoint, or {@code null} if there is none
+     */
+    CheckpointDto get(String accountUuid);
+
+    /**
+     * Returns all the checkpoints saved by a previous, interrupted, attempt.
+     *
+     * @return the checkpoints, empty if the previous collect succeeded
+     */
+    List<CheckpointDto> getAll();
+}
@@ -36,6 +36,60 @@ public interface CollectorPlugin {
               List<AccountDto> previousAccounts,
               List<RecurringPaymentDto> previousRecurringPayments);
 
+    /**
+     * Provides a sink to push transactions while {@link #collect()} is running, instead of returning them all
+     * from {@link #getTransactions()}.
+     * <p>
+     * The host calls this method after {@link #init} and before {@link #collect()}. A collector supporting it
+     * pushes each transaction as soon as it is parsed and returns {@code true}; {@link #getTransactions()} must then
+     * only return transactions that have not been pushed (usually none). Collectors that do not support it
+     * return {@code false} and keep returning their transactions from {@link #getTransactions()}.
+     *
+     * @param transactionSink the sink provided by the host
+     * @return {@code true} if the collector will push transactions to the sink
+     */
+    default boolean setTransactionSink(TransactionSink transactionSink) {
+        return false;
+    }
+
+    /**
+     * Provides the store for collect checkpoints, allowing an interrupted collect to resume.
+     * <p>
+     * The host calls this method after {@link #init} and before {@link #collect()}. On a retry after a failure,
+     * the provider already holds the checkpoints saved during the failed attempt.
+     * Collectors that do not save checkpoints can ignore it.
+     *
+     * @param checkpointProvider the checkpoint store provided by the host
+     */
+    default void setCheckpointProvider(CheckpointProvider checkpointProvider) {
+    }
+
+    /**
+     * Provides the token telling when the collect must stop.
+     * <p>
+     * The host calls this method after {@link #init} and before {@link #collect()}. The collector should call
+     * {@link CancellationToken#throwIfCancelled()} between units of work, the resulting
+     * {@link com.tibudget.api.exceptions.CollectCancelled} being a {@link CollectError}. The providers given to
+     * {@link #init} are bound to the same token and fail once it is cancelled. Whatever has been collected before
+     * the cancellation is still read through {@link #getAccounts()}, {@link #getTransactions()} and the other getters.
+     *
+     * @param cancellationToken the token provided by the host
+     */
+    default void setCancellationToken(CancellationToken cancellationToken) {
+    }
+
+    /**
+     * Provides the listener to which the collector reports its progress while collecting.
+     * <p>
+     * The host calls this method after {@link #init} and before {@link #collect()}. Collectors supporting it push
+     * an event on each phase change and regularly within a phase; {@link #getProgress()} must still return the
+     * last reported progress for hosts that poll.
+     *
+     * @param progressListener the listener provided by the host
+     */
+    default void setProgressListener(ProgressListener progressListener) {
+    }
+
     /**
      * Called when the collector receives a callback URI at the end of an external
      * authentication or connection flow (OAuth, SSO, web login, etc.).
@@ -121,6 +175,8 @@ public interface CollectorPlugin {
     /**
      * Retrieves the list of new transactions detected since the last {@link #collect()} call.
      * Transactions should be associated with accounts present in the list returned by {@link #getAccounts()}.
+     * Transactions already pushed to the {@link TransactionSink} given to {@link #setTransactionSink(TransactionSink)}
+     * must not be returned again.
      *
      * @return an iterable collection of {@link TransactionDto} representing new transactions.
      */
@@ -202,4 +258,20 @@ public interface CollectorPlugin {
      * @return an integer between 0 and 100 (inclusive) representing the collect progress.
      */
     int getProgress();
+
+    /**
+     * Prepares this instance to be reused for another collect, possibly of another configuration.
+     * <p>
+     * The host calls this method once a collect is finished and its results have been read. A collector supporting
+     * reuse clears every state tied to the previous configuration (the {@link Input} fields, the providers, settings,
+     * accounts, transactions, tokens, cookies and progress) while keeping what is costly to build and shared by
+     * every configuration, such as compiled patterns or parsers, then returns {@code true}. The next use of the
+     * instance starts again with {@link #init}.
+     * Collectors that cannot guarantee this return {@code false} and a new instance is created for each collect.
+     *
+     * @return {@code true} if this instance can be reused
+     */
+    default boolean reset() {
+        return false;
+    }
 }
@@ -1,5 +1,8 @@
 package com.tibudget.api;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Defines the built-in metadata keys supported by Tibu for counterparties.
  * <p>
@@ -17,7 +20,7 @@ package com.tibudget.api;
  * Custom metadata keys are not listed here and must be submitted for validation
  * through the Tibu professional dashboard before production use.
  */
-public enum CounterpartyMetadataCoreKeys {
+public enum CounterpartyMetadataCoreKeys implements CounterpartyMetadataKey {
 
     /* ==============================
      * Identity / naming
@@ -334,6 +337,14 @@ public enum CounterpartyMetadataCoreKeys {
             false
     );
 
+    private static final Map<String, CounterpartyMetadataCoreKeys> BY_KEY = new HashMap<>();
+
+    static {
+        for (CounterpartyMetadataCoreKeys value : values()) {
+            BY_KEY.put(value.key, value);
+        }
+    }
+
     private final String key;
     private final String description;
     private final boolean numeric;
@@ -346,11 +357,22 @@ public enum CounterpartyMetadataCoreKeys {
         this.unique = unique;
     }
 
+    /**
+     * Returns the core metadata key with the given identifier.
+     *
+     * @param key the metadata key, for example {@code "tibu:id:fr:siret"}
+     * @return the core metadata key, or {@code null} if {@code key} is not a core metadata key
+     */
+    public static CounterpartyMetadataCoreKeys fromKey(String key) {
+        return key == null ? null : BY_KEY.get(key);
+    }
+
     /**
      * Returns the unique identifier of the metadata key.
      *
      * @return the metadata key
      */
+    @Override
     public String getKey() {
         return key;
     }
@@ -360,6 +382,7 @@ public enum CounterpartyMetadataCoreKeys {
      *
      * @return the metadata description
      */
+    @Override
     public String getDescription() {
         return description;
     }
@@ -369,6 +392,7 @@ public enum CounterpartyMetadataCoreKeys {
      *
      * @return {@code true} if the value is numeric; otherwise {@code false}
      */
+    @Override
     public boolean isNumeric() {
         return numeric;
     }
@@ -380,6 +404,7 @@ public enum CounterpartyMetadataCoreKeys {
      *
      * @return {@code true} if the value must be unique; otherwise {@code false}
      */
+    @Override
     public boolean isUnique() {
         return unique;
     }
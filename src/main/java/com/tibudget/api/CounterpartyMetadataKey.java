@@ -0,0 +1,39 @@
+package com.tibudget.api;
+
+/**
+ * Definition of a counterparty metadata key.
+ * <p>
+ * Built-in keys are the constants of {@link CounterpartyMetadataCoreKeys}. Custom keys validated through the Tibu
+ * professional dashboard are provided by the host with the same definition.
+ */
+public interface CounterpartyMetadataKey {
+
+    /**
+     * Returns the unique identifier of the metadata key.
+     *
+     * @return the metadata key, for example {@code "tibu:id:fr:siret"}
+     */
+    String getKey();
+
+    /**
+     * Returns the functional description of the metadata.
+     *
+     * @return the metadata description
+     */
+    String getDescription();
+
+    /**
+     * Indicates whether the metadata value is numeric.
+     *
+     * @return {@code true} if the value is numeric; otherwise {@code false}
+     */
+    boolean isNumeric();
+
+    /**
+     * Indicates whether the metadata value must be unique across all counterparties, which is required to use
+     * the key with {@link CounterpartyProvider}.
+     *
+     * @return {@code true} if the value must be unique; otherwise {@code false}
+     */
+    boolean isUnique();
+}
@@ -1,5 +1,10 @@
 package com.tibudget.api;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
 /**
  * Provides read-only access to counterparties using metadata-based lookup.
  * <p>
@@ -66,4 +71,95 @@ public interface CounterpartyProvider {
      *     or does not refer to a metadata marked as {@code unique=true}.
      */
     String find(String metadataKey, Double valueNumeric);
+
+    /**
+     * Finds the counterparties matching several string-based metadata values at once.
+     * <p>
+     * Collectors resolving the counterparties of a page of transactions should prefer this method
+     * to repeated calls to {@link #find(String, String)}: the host answers with a single indexed query.
+     * The default implementation calls {@link #find(String, String)} for each distinct value, or once with a
+     * {@code null} value when there is none so that the key is validated even for an empty batch.
+     *
+     * @param metadataKey
+     *     Unique identifier of the metadata key, for example {@code "tibu:id:fr:siret"}.
+     * @param valuesString
+     *     String values associated with the metadata key, {@code null} values being ignored.
+     *     The collection itself is mandatory.
+     *     The comparison is expected to be exact.
+     *
+     * @return
+     *     The UUID of the matching counterparty by value.
+     *     Values without matching counterparty are absent from the map.
+     *
+     * @throws IllegalArgumentException
+     *     if {@code metadataKey} is null, blank,
+     *     unknown, not validated,
+     *     or does not refer to a metadata marked as {@code unique=true},
+     *     or if the collection of values is null.
+     */
+    default Map<String, String> findAll(String metadataKey, Collection<String> valuesString) {
+        if (valuesString == null) {
+            throw new IllegalArgumentException("valuesString is mandatory");
+        }
+        Map<String, String> result = new HashMap<>();
+        boolean searched = false;
+        for (String value : new HashSet<>(valuesString)) {
+            if (value != null) {
+                searched = true;
+                String uuid = find(metadataKey, value);
+                if (uuid != null) {
+                    result.put(value, uuid);
+                }
+            }
+        }
+        if (!searched) {
+            find(metadataKey, (String) null);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the counterparties matching several numeric metadata values at once.
+     * <p>
+     * Numeric equivalent of {@link #findAll(String, Collection)}.
+     * The default implementation calls {@link #find(String, Double)} for each distinct value, or once with a
+     * {@code null} value when there is none so that the key is validated even for an empty batch.
+     *
+     * @param metadataKey
+     *     Unique identifier of the metadata key.
+     * @param valuesNumeric
+     *     Numeric values associated with the metadata key, {@code null} values being ignored.
+     *     The collection itself is mandatory.
+     *     The comparison is expected to be exact.
+     *
+     * @return
+     *     The UUID of the matching counterparty by value.
+     *     Values without matching counterparty are absent from the map.
+     *
+     * @throws IllegalArgumentException
+     *     if {@code metadataKey} is null, blank,
+     *     unknown, not validated,
+     *     or does not refer to a metadata marked as {@code unique=true},
+     *     or if the collection of values is null.
+     */
+    default Map<Double, String> findAllNumeric(String metadataKey, Collection<Double> valuesNumeric) {
+        if (valuesNumeric == null) {
+            throw new IllegalArgumentException("valuesNumeric is mandatory");
+        }
+        Map<Double, String> result = new HashMap<>();
+        boolean searched = false;
+        for (Double value : new HashSet<>(valuesNumeric)) {
+            if (value != null) {
+                searched = true;
+                String uuid = find(metadataKey, value);
+                if (uuid != null) {
+                    result.put(value, uuid);
+                }
+            }
+        }
+        if (!searched) {
+            find(metadataKey, (Double) null);
+        }
+        return result;
+    }
 }
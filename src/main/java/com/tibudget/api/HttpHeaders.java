@@ -0,0 +1,323 @@
+package com.tibudget.api;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Ordered, multi-valued collection of HTTP headers with case-insensitive names.
+ * <p>
+ * Lookups hash the name while folding its case, so finding {@code Set-Cookie} or {@code Location} does not
+ * allocate any lower-cased copy and does not scan every header. Repeated headers (several {@code Set-Cookie}
+ * for example) are all kept, in the order they have been added.
+ * <p>
+ * The same structure is used for request headers and response headers. This class is not thread-safe:
+ * headers of a response must not be modified once the response has been handed to a collector.
+ */
+public final class HttpHeaders implements Serializable, Iterable<Map.Entry<String, String>> {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private String[] names;
+    private String[] values;
+    private int[] hashes;
+    /** Index of the previous header of the same bucket, or -1. */
+    private int[] next;
+    /** Index + 1 of the last header added to each bucket, 0 if the bucket is empty. */
+    private int[] buckets;
+    private int size;
+
+    /**
+     * Creates an empty collection of headers.
+     */
+    public HttpHeaders() {
+        this(INITIAL_CAPACITY);
+    }
+
+    private HttpHeaders(int capacity) {
+        int tableSize = Integer.highestOneBit(Math.max(INITIAL_CAPACITY, capacity) - 1) << 1;
+        names = new String[tableSize];
+        values = new String[tableSize];
+        hashes = new int[tableSize];
+        next = new int[tableSize];
+        buckets = new int[tableSize];
+    }
+
+    /**
+     * Copies single-valued headers, as used by {@link InternetProvider} methods.
+     * {@code Set-Cookie} values joined with {@code "\n"} by {@link #toMap()} are split back. Entries with a
+     * {@code null} name, such as the status line of {@link java.net.HttpURLConnection#getHeaderFields()}, or a
+     * {@code null} value are skipped.
+     *
+     * @param headers the headers to copy, may be {@code null}
+     * @return a new collection of headers
+     */
+    public static HttpHeaders of(Map<String, String> headers) {
+        HttpHeaders result = new HttpHeaders(headers == null ? 0 : headers.size());
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                String value = header.getValue();
+                if (header.getKey() == null || value == null) {
+                    continue;
+                }
+                if (value.indexOf('\n') >= 0 && "Set-Cookie".equalsIgnoreCase(header.getKey())) {
+                    for (String cookie : value.split("\n")) {
+                        result.add(header.getKey(), cookie);
+                    }
+                } else {
+                    result.add(header.getKey(), value);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the first value of a header.
+     *
+     * @param name the header name, case-insensitive
+     * @return the first value, or {@code null} if the header is absent
+     */
+    public String get(String name) {
+        int index = firstIndex(name);
+        return index < 0 ? null : values[index];
+    }
+
+    /**
+     * Returns all the values of a header, in the order they have been added.
+     *
+     * @param name the header name, case-insensitive
+     * @return the values, empty if the header is absent
+     */
+    public List<String> getAll(String name) {
+        if (name == null) {
+            return Collections.emptyList();
+        }
+        int hash = hash(name);
+        List<String> result = null;
+        // Chains go from the most recent header to the oldest one
+        for (int i = buckets[hash & (buckets.length - 1)] - 1; i >= 0; i = next[i]) {
+            if (hashes[i] == hash && names[i].equalsIgnoreCase(name)) {
+                if (result == null) {
+                    result = new ArrayList<>(2);
+                }
+                result.add(values[i]);
+            }
+        }
+        if (result == null) {
+            return Collections.emptyList();
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Indicates whether a header is present.
+     *
+     * @param name the header name, case-insensitive
+     * @return {@code true} if at least one value exists
+     */
+    public boolean contains(String name) {
+        return firstIndex(name) >= 0;
+    }
+
+    /**
+     * Adds a value to a header, keeping the existing values.
+     *
+     * @param name  the header name
+     * @param value the value
+     * @return this collection
+     */
+    public HttpHeaders add(String name, String value) {
+        if (name == null || value == null) {
+            throw new IllegalArgumentException("Header name and value are mandatory");
+        }
+        if (size == names.length) {
+            resize(names.length << 1);
+        }
+        int hash = hash(name);
+        int bucket = hash & (buckets.length - 1);
+        names[size] = name;
+        values[size] = value;
+        hashes[size] = hash;
+        next[size] = buckets[bucket] - 1;
+        buckets[bucket] = size + 1;
+        size++;
+        return this;
+    }
+
+    /**
+     * Replaces all the values of a header.
+     *
+     * @param name  the header name
+     * @param value the new value
+     * @return this collection
+     */
+    public HttpHeaders set(String name, String value) {
+        remove(name);
+        return add(name, value);
+    }
+
+    /**
+     * Removes all the values of a header.
+     *
+     * @param name the header name, case-insensitive
+     * @return {@code true} if at least one value has been removed
+     */
+    public boolean remove(String name) {
+        if (!contains(name)) {
+            return false;
+        }
+        int hash = hash(name);
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (hashes[i] != hash || !names[i].equalsIgnoreCase(name)) {
+                names[kept] = names[i];
+                values[kept] = values[i];
+                hashes[kept] = hashes[i];
+                kept++;
+            }
+        }
+        Arrays.fill(names, kept, size, null);
+        Arrays.fill(values, kept, size, null);
+        size = kept;
+        rehash();
+        return true;
+    }
+
+    /**
+     * Returns the number of header values.
+     *
+     * @return the number of values, repeated headers counting once per value
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Indicates whether there is no header.
+     *
+     * @return {@code true} if empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the distinct header names, as first added.
+     *
+     * @return the header names
+     */
+    public Set<String> names() {
+        Set<String> result = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        List<String> ordered = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (result.add(names[i])) {
+                ordered.add(names[i]);
+            }
+        }
+        return new LinkedHashSet<>(ordered);
+    }
+
+    /**
+     * Converts these headers to a single-valued map, as expected by {@link InternetProvider} methods.
+     * Repeated headers are joined with {@code ", "}, except {@code Set-Cookie} whose values may themselves contain
+     * commas and are joined with {@code "\n"}. The returned map looks up names case-insensitively.
+     *
+     * @return a new map of headers
+     */
+    public Map<String, String> toMap() {
+        Map<String, String> result = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = 0; i < size; i++) {
+            String previous = result.get(names[i]);
+            if (previous == null) {
+                result.put(names[i], values[i]);
+            } else {
+                result.put(names[i], previous + ("Set-Cookie".equalsIgnoreCase(names[i]) ? "\n" : ", ") + values[i]);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, String>> iterator() {
+        return new Iterator<Map.Entry<String, String>>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public Map.Entry<String, String> next() {
+                if (index >= size) {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<String, String> entry = new AbstractMap.SimpleImmutableEntry<>(names[index], values[index]);
+                index++;
+                return entry;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("HttpHeaders{");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                result.append(", ");
+            }
+            result.append(names[i]).append('=').append(values[i]);
+        }
+        return result.append('}').toString();
+    }
+
+    private int firstIndex(String name) {
+        if (name == null) {
+            return -1;
+        }
+        int hash = hash(name);
+        int first = -1;
+        for (int i = buckets[hash & (buckets.length - 1)] - 1; i >= 0; i = next[i]) {
+            if (hashes[i] == hash && names[i].equalsIgnoreCase(name)) {
+                first = i;
+            }
+        }
+        return first;
+    }
+
+    private void resize(int capacity) {
+        names = Arrays.copyOf(names, capacity);
+        values = Arrays.copyOf(values, capacity);
+        hashes = Arrays.copyOf(hashes, capacity);
+        next = new int[capacity];
+        buckets = new int[capacity];
+        rehash();
+    }
+
+    private void rehash() {
+        Arrays.fill(buckets, 0);
+        for (int i = 0; i < size; i++) {
+            int bucket = hashes[i] & (buckets.length - 1);
+            next[i] = buckets[bucket] - 1;
+            buckets[bucket] = i + 1;
+        }
+    }
+
+    /**
+     * Case-insensitive hash of a header name, header names being ASCII tokens only ASCII letters are folded.
+     */
+    private static int hash(String name) {
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            hash = 31 * hash + c;
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,177 @@
+package com.tibudget.api;
+
+import com.tibudget.api.exceptions.ParameterError;
+import com.tibudget.dto.MessageDto;
+
+import java.util.*;
+
+/**
+ * Form metadata of a plugin, generated at build time from its {@link Input} fields by
+ * {@link com.tibudget.api.processor.InputProcessor}.
+ * <p>
+ * The descriptor of a plugin class {@code com.example.MyCollector} is the generated class
+ * {@code com.example.MyCollector$$InputDescriptor}, obtained with {@link #of(Class)}. It gives the fields in
+ * display order, the fieldsets and their show/hide dependencies, and reads or writes the values through the getters
+ * and setters without reflection.
+ *
+ * @param <T> the plugin type
+ */
+public abstract class InputDescriptor<T> {
+
+    /**
+     * Suffix appended to the binary name of a plugin class to get the name of its generated descriptor.
+     */
+    public static final String SUFFIX = "$$InputDescriptor";
+
+    private static final ClassValue<Optional<InputDescriptor<?>>> DESCRIPTORS = new ClassValue<Optional<InputDescriptor<?>>>() {
+        @Override
+        protected Optional<InputDescriptor<?>> computeValue(Class<?> type) {
+            try {
+                Class<?> generated = Class.forName(type.getName() + SUFFIX, true, type.getClassLoader());
+                return Optional.of((InputDescriptor<?>) generated.getConstructor().newInstance());
+            } catch (ClassNotFoundException e) {
+                // No own input: the descriptor of the superclass applies
+                Class<?> superclass = type.getSuperclass();
+                return superclass == null || superclass == Object.class ? Optional.empty() : get(superclass);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Cannot instantiate " + type.getName() + SUFFIX, e);
+            }
+        }
+    };
+
+    private final Class<T> pluginClass;
+
+    private final List<InputField<T>> fields;
+
+    private final Map<String, InputField<T>> fieldsByName;
+
+    private final Map<String, List<InputField<T>>> fieldsets;
+
+    protected InputDescriptor(Class<T> pluginClass, List<InputField<T>> fields) {
+        this.pluginClass = pluginClass;
+        this.fields = Collections.unmodifiableList(new ArrayList<>(fields));
+        Map<String, InputField<T>> byName = new HashMap<>();
+        Map<String, List<InputField<T>>> byFieldset = new LinkedHashMap<>();
+        for (InputField<T> field : fields) {
+            byName.put(field.getName(), field);
+            byFieldset.computeIfAbsent(field.getFieldset(), k -> new ArrayList<>()).add(field);
+        }
+        byFieldset.replaceAll((k, v) -> Collections.unmodifiableList(v));
+        this.fieldsByName = byName;
+        this.fieldsets = Collections.unmodifiableMap(byFieldset);
+    }
+
+    /**
+     * Returns the descriptor generated for a plugin class, or for its closest superclass having one.
+     *
+     * @param pluginClass the plugin class
+     * @param <T>         the plugin type
+     * @return the descriptor, or {@code null} if the plugin has no {@link Input} field or has not been compiled
+     * with the annotation processor enabled
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> InputDescriptor<? super T> of(Class<T> pluginClass) {
+        return (InputDescriptor<? super T>) DESCRIPTORS.get(pluginClass).orElse(null);
+    }
+
+    public Class<T> getPluginClass() {
+        return pluginClass;
+    }
+
+    /**
+     * @return the fields, in display order
+     */
+    public List<InputField<T>> getFields() {
+        return fields;
+    }
+
+    /**
+     * @param name the field name
+     * @return the field, or {@code null} if there is no such input
+     */
+    public InputField<T> getField(String name) {
+        return fieldsByName.get(name);
+    }
+
+    /**
+     * @return the fields grouped by fieldset, in display order; fields without fieldset are under the empty name
+     */
+    public Map<String, List<InputField<T>>> getFieldsets() {
+        return fieldsets;
+    }
+
+    /**
+     * Tells whether a fieldset is displayed given the current values of the boolean fields controlling it
+     * through {@link Input#showFieldset()} and {@link Input#hideFieldset()}.
+     *
+     * @param plugin   the plugin holding the current values
+     * @param fieldset the fieldset name
+     * @return {@code true} if the fieldset is displayed
+     */
+    public boolean isFieldsetVisible(T plugin, String fieldset) {
+        for (InputField<T> field : fields) {
+            boolean shows = field.getShowFieldset().contains(fieldset);
+            boolean hides = field.getHideFieldset().contains(fieldset);
+            if (shows || hides) {
+                boolean checked = Boolean.TRUE.equals(field.get(plugin));
+                if (shows != checked) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Visibility of a fieldset once the submitted values are applied: a controlling boolean that is itself visible
+     * takes its submitted value, a hidden one keeps its current value since it is not applied.
+     */
+    private boolean isVisible(T plugin, Map<String, String> values, String fieldset, int depth) {
+        if (fieldset.isEmpty() || depth > fields.size()) {
+            // No fieldset, or cyclic show/hide dependencies
+            return true;
+        }
+        for (InputField<T> field : fields) {
+            boolean shows = field.getShowFieldset().contains(fieldset);
+            boolean hides = field.getHideFieldset().contains(fieldset);
+            if (shows || hides) {
+                boolean checked = isVisible(plugin, values, field.getFieldset(), depth + 1)
+                        ? InputField.isChecked(values.get(field.getName()))
+                        : Boolean.TRUE.equals(field.get(plugin));
+                if (shows != checked) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sets submitted values on a plugin, in display order. Fields of hidden fieldsets are ignored, missing required
+     * values are reported. The visibility of fieldsets is computed from the submitted values of the boolean fields
+     * controlling them, whatever their position in the form.
+     *
+     * @param plugin the plugin
+     * @param values the submitted values by field name
+     * @return the errors, empty if every value has been accepted
+     */
+    public List<MessageDto> apply(T plugin, Map<String, String> values) {
+        List<MessageDto> errors = new ArrayList<>();
+        for (InputField<T> field : fields) {
+            if (!isVisible(plugin, values, field.getFieldset(), 0)) {
+                continue;
+            }
+            String value = values.get(field.getName());
+            if (field.isRequired() && !field.isBoolean() && (value == null || value.trim().isEmpty())) {
+                errors.add(new MessageDto(MessageDto.MessageType.ERROR, field.getName(), "error.input.required"));
+                continue;
+            }
+            try {
+                field.set(plugin, value);
+            } catch (ParameterError e) {
+                errors.addAll(e.getMessages().getAllMessages());
+            }
+        }
+        return errors;
+    }
+}
@@ -0,0 +1,202 @@
+package com.tibudget.api;
+
+import com.tibudget.api.exceptions.ParameterError;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A field annotated with {@link Input}, as described by an {@link InputDescriptor}.
+ * <p>
+ * Instances are created by the classes generated by {@link com.tibudget.api.processor.InputProcessor}, which
+ * implement {@link #get(Object)} and {@link #set(Object, String)} by calling the getter and the setter of the field
+ * directly.
+ *
+ * @param <T> the plugin type
+ */
+public abstract class InputField<T> {
+
+    private final String name;
+    private final Class<?> type;
+    private final boolean required;
+    private final int size;
+    private final int maxlen;
+    private final int order;
+    private final boolean password;
+    private final String fieldset;
+    private final List<String> hideFieldset;
+    private final List<String> showFieldset;
+
+    protected InputField(String name, Class<?> type, boolean required, int size, int maxlen, int order, boolean password,
+                         String fieldset, String[] hideFieldset, String[] showFieldset) {
+        this.name = name;
+        this.type = type;
+        this.required = required;
+        this.size = size;
+        this.maxlen = maxlen;
+        this.order = order;
+        this.password = password;
+        this.fieldset = fieldset;
+        this.hideFieldset = Collections.unmodifiableList(Arrays.asList(hideFieldset));
+        this.showFieldset = Collections.unmodifiableList(Arrays.asList(showFieldset));
+    }
+
+    /**
+     * Reads the value of the field through its getter.
+     *
+     * @param plugin the plugin
+     * @return the current value
+     */
+    public abstract Object get(T plugin);
+
+    /**
+     * Converts a submitted value to the field type and passes it to the setter.
+     *
+     * @param plugin the plugin
+     * @param value  the submitted value, {@code null} or empty if not filled
+     * @throws ParameterError if the value cannot be converted or is rejected by the setter
+     */
+    public abstract void set(T plugin, String value) throws ParameterError;
+
+    /**
+     * Converts a submitted value to the field type, used by the generated {@link #set(Object, String)}.
+     * An empty value gives {@code null}, or {@code false} for a primitive boolean. A string longer than
+     * {@link Input#maxlen()} is rejected.
+     *
+     * @param value the submitted value
+     * @return the converted value, boxed for primitive types
+     * @throws ParameterError if the value cannot be converted
+     */
+    protected final Object parse(String value) throws ParameterError {
+        if (type == String.class) {
+            if (maxlen > 0 && value != null && value.length() > maxlen) {
+                throw new ParameterError(name, "error.input.maxlen", maxlen);
+            }
+            return value;
+        }
+        String trimmed = value == null ? "" : value.trim();
+        if (trimmed.isEmpty()) {
+            if (type == boolean.class) {
+                return Boolean.FALSE;
+            }
+            if (type.isPrimitive()) {
+                throw new ParameterError(name, "error.input.required");
+            }
+            return null;
+        }
+        try {
+            if (type == boolean.class || type == Boolean.class) {
+                return isChecked(trimmed);
+            }
+            if (type == int.class || type == Integer.class) {
+                return Integer.valueOf(trimmed);
+            }
+            if (type == long.class || type == Long.class) {
+                return Long.valueOf(trimmed);
+            }
+            if (type == double.class || type == Double.class) {
+                return Double.valueOf(trimmed);
+            }
+            if (type == float.class || type == Float.class) {
+                return Float.valueOf(trimmed);
+            }
+            if (type == short.class || type == Short.class) {
+                return Short.valueOf(trimmed);
+            }
+            if (type == byte.class || type == Byte.class) {
+                return Byte.valueOf(trimmed);
+            }
+            if (type == BigDecimal.class) {
+                return new BigDecimal(trimmed);
+            }
+        } catch (NumberFormatException e) {
+            throw new ParameterError(name, "error.input.format", e, value);
+        }
+        if (type == char.class || type == Character.class) {
+            if (trimmed.length() != 1) {
+                throw new ParameterError(name, "error.input.format", value);
+            }
+            return trimmed.charAt(0);
+        }
+        if (type.isEnum()) {
+            for (Object constant : type.getEnumConstants()) {
+                if (((Enum<?>) constant).name().equals(trimmed)) {
+                    return constant;
+                }
+            }
+            throw new ParameterError(name, "error.input.format", value);
+        }
+        throw new IllegalStateException("Unsupported input type " + type.getName() + " for field " + name);
+    }
+
+    /**
+     * Tells whether a submitted value checks a boolean field.
+     *
+     * @param value the submitted value
+     * @return {@code true} for {@code true}, {@code on} or {@code 1}
+     */
+    static boolean isChecked(String value) {
+        if (value == null) {
+            return false;
+        }
+        String trimmed = value.trim();
+        return "true".equalsIgnoreCase(trimmed) || "on".equalsIgnoreCase(trimmed) || "1".equals(trimmed);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    public boolean isBoolean() {
+        return type == boolean.class || type == Boolean.class;
+    }
+
+    public boolean isRequired() {
+        return required;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getMaxlen() {
+        return maxlen;
+    }
+
+    public int getOrder() {
+        return order;
+    }
+
+    public boolean isPassword() {
+        return password;
+    }
+
+    public String getFieldset() {
+        return fieldset;
+    }
+
+    public List<String> getHideFieldset() {
+        return hideFieldset;
+    }
+
+    public List<String> getShowFieldset() {
+        return showFieldset;
+    }
+
+    @Override
+    public String toString() {
+        return "InputField{" +
+                "name='" + name + '\'' +
+                ", type=" + type.getName() +
+                ", required=" + required +
+                ", order=" + order +
+                ", fieldset='" + fieldset + '\'' +
+                '}';
+    }
+}
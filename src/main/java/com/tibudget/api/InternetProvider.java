@@ -1,8 +1,24 @@
 package com.tibudget.api;
 
+import com.tibudget.api.internet.BoundedAsyncInternetProvider;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Interface defining a secure and controlled HTTP communication bridge
@@ -10,6 +26,11 @@ import java.util.Map;
  * <p>
  * All requests are subject to domain whitelisting and logging, and are executed
  * outside of the plugin sandbox process to ensure network isolation and security.
+ * <p>
+ * Compression is handled by the host: it advertises the encodings it can decode in {@code Accept-Encoding}
+ * and decompresses bodies while receiving them, so collectors always get decoded content. Collectors must
+ * neither set {@code Accept-Encoding} nor decompress bodies themselves. The transferred and decoded sizes
+ * are reported by {@link Response#getTransferredBytes()} and {@link Response#getDecodedBytes()}.
  */
 public interface InternetProvider {
 
@@ -47,26 +68,586 @@ public interface InternetProvider {
      */
     Response downloadFile(String url, Map<String, String> headers, String forceContentType) throws IOException;
 
+    /**
+     * Performs an HTTP GET request and returns the body as a stream.
+     * <p>
+     * The status and headers are available as soon as the method returns, the body is read
+     * while the collector consumes it. This is the preferred way to parse large documents
+     * (statement exports, JSON transaction dumps) incrementally without holding them in memory.
+     * <p>
+     * The returned response must be closed by the caller, usually with a try-with-resources block.
+     * The default implementation falls back to {@link #get(String, Map)} and does not stream.
+     *
+     * @param url     Full URL to request.
+     * @param headers Optional HTTP headers.
+     * @return The response including headers and a body stream
+     * @throws IOException on failure (network error, unauthorized domain, etc.)
+     */
+    default StreamResponse getStream(String url, Map<String, String> headers) throws IOException {
+        return StreamResponse.of(get(url, headers));
+    }
+
+    /**
+     * Performs an HTTP POST request with a text payload and returns the body as a stream.
+     * <p>
+     * See {@link #getStream(String, Map)} for the streaming contract.
+     * The default implementation falls back to {@link #post(String, String, String, Map)} and does not stream.
+     *
+     * @param url     Full URL to post to.
+     * @param body    The request body, typically a JSON or form string.
+     * @param contentType Content type of the body
+     * @param headers Optional HTTP headers.
+     * @return The response including headers and a body stream
+     * @throws IOException on failure.
+     */
+    default StreamResponse postStream(String url, String body, String contentType, Map<String, String> headers) throws IOException {
+        return StreamResponse.of(post(url, body, contentType, headers));
+    }
+
+    /**
+     * Performs a request when only the status and the headers are needed, for example to follow a redirect
+     * or to check that a session is still valid. The returned response has no body.
+     * <p>
+     * Hosts should override this method to send an HTTP HEAD request, or a GET request whose body is not read.
+     * The default implementation closes the stream returned by {@link #getStream(String, Map)} before reading it,
+     * which only avoids buffering the body when the host streams it: with the default {@code getStream}, the whole
+     * body is downloaded and buffered by {@link #get(String, Map)} before being dropped.
+     *
+     * @param url     Full URL to request.
+     * @param headers Optional HTTP headers.
+     * @return The response including headers, without body
+     * @throws IOException on failure (network error, unauthorized domain, etc.)
+     */
+    default Response head(String url, Map<String, String> headers) throws IOException {
+        try (StreamResponse response = getStream(url, headers)) {
+            return Response.ofBytes(response.code, response.message, response.method, response.location, response.protocol, null, response.headers);
+        }
+    }
+
+    /**
+     * Returns a non-blocking view of this provider, so independent requests can be pipelined.
+     * <p>
+     * The concurrency limit applies to the returned instance: a collector should call this method once
+     * and keep the result for the whole collect. The default implementation runs the blocking methods
+     * of this provider on a shared pool, limited to {@link BoundedAsyncInternetProvider#DEFAULT_MAX_CONCURRENCY}
+     * calls at the same time.
+     *
+     * @return an asynchronous provider sending requests through this provider
+     */
+    default AsyncInternetProvider async() {
+        return new BoundedAsyncInternetProvider(this);
+    }
+
+    /**
+     * Returns a view of this provider whose requests fail with an {@link java.io.InterruptedIOException} (typically
+     * a {@link java.net.SocketTimeoutException}) when they do not complete within the given time, connection
+     * included. Hosts use it to propagate the deadline of a collect down to the network layer.
+     * <p>
+     * The default implementation does not support timeouts and returns this provider.
+     *
+     * @param timeout maximum duration of each request sent through the returned provider
+     * @return a provider applying the timeout
+     */
+    default InternetProvider withTimeout(Duration timeout) {
+        return this;
+    }
+
+    /**
+     * Executes several independent requests and returns their results in request order.
+     * <p>
+     * This is intended for collectors fetching many pages from the same host (one detail page per transaction
+     * for example): the host is free to run them concurrently, typically multiplexed over a single HTTP/2
+     * connection. A failing request does not fail the batch, its error is reported in the matching
+     * {@link BatchResult}.
+     * <p>
+     * The default implementation overlaps the requests through {@link #async()}.
+     *
+     * @param requests the requests to execute
+     * @return one result per request, in the same order
+     */
+    default List<BatchResult> batch(List<Request> requests) {
+        AsyncInternetProvider asyncProvider = async();
+        List<CompletableFuture<Response>> futures = new ArrayList<>(requests.size());
+        for (Request request : requests) {
+            futures.add(request.execute(asyncProvider));
+        }
+        List<BatchResult> results = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            try {
+                results.add(new BatchResult(requests.get(i), futures.get(i).join(), null));
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                IOException failure = cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                results.add(new BatchResult(requests.get(i), null, failure));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Describes a request that can be executed later, used by {@link #batch(List)}.
+     */
+    class Request implements Serializable {
+
+        /**
+         * The kind of call, matching the methods of {@link InternetProvider}.
+         */
+        public enum Type {
+            /** See {@link InternetProvider#get(String, Map)} */
+            GET,
+            /** See {@link InternetProvider#post(String, String, String, Map)} */
+            POST,
+            /** See {@link InternetProvider#downloadFile(String, Map, String)} */
+            DOWNLOAD
+        }
+
+        public final Type type;
+        public final String url;
+        public final String body;
+        public final String contentType;
+        public final Map<String, String> headers;
+
+        public Request(Type type, String url, String body, String contentType, Map<String, String> headers) {
+            this.type = type;
+            this.url = url;
+            this.body = body;
+            this.contentType = contentType;
+            this.headers = headers;
+        }
+
+        /**
+         * Creates a GET request.
+         *
+         * @param url     Full URL to request.
+         * @param headers Optional HTTP headers.
+         * @return the request
+         */
+        public static Request get(String url, Map<String, String> headers) {
+            return new Request(Type.GET, url, null, null, headers);
+        }
+
+        /**
+         * Creates a POST request.
+         *
+         * @param url     Full URL to post to.
+         * @param body    The request body, typically a JSON or form string.
+         * @param contentType Content type of the body
+         * @param headers Optional HTTP headers.
+         * @return the request
+         */
+        public static Request post(String url, String body, String contentType, Map<String, String> headers) {
+            return new Request(Type.POST, url, body, contentType, headers);
+        }
+
+        /**
+         * Creates a file download request.
+         *
+         * @param url         The URL of the file to download.
+         * @param headers     Optional headers to include in the request.
+         * @param forceContentType Expected mime type of the document, stored as the request content type.
+         * @return the request
+         */
+        public static Request download(String url, Map<String, String> headers, String forceContentType) {
+            return new Request(Type.DOWNLOAD, url, null, forceContentType, headers);
+        }
+
+        /**
+         * Returns the request headers. To send several values for the same header, build them with
+         * {@link HttpHeaders} and pass {@link HttpHeaders#toMap()} when creating the request.
+         *
+         * @return the headers, never {@code null}
+         */
+        public HttpHeaders getHeaders() {
+            return HttpHeaders.of(headers);
+        }
+
+        /**
+         * Executes this request with a blocking provider.
+         *
+         * @param provider the provider to use
+         * @return the response
+         * @throws IOException on failure
+         */
+        public Response execute(InternetProvider provider) throws IOException {
+            switch (type) {
+                case POST:
+                    return provider.post(url, body, contentType, headers);
+                case DOWNLOAD:
+                    return provider.downloadFile(url, headers, contentType);
+                default:
+                    return provider.get(url, headers);
+            }
+        }
+
+        /**
+         * Executes this request with an asynchronous provider.
+         *
+         * @param provider the provider to use
+         * @return a future completed with the response
+         */
+        public CompletableFuture<Response> execute(AsyncInternetProvider provider) {
+            switch (type) {
+                case POST:
+                    return provider.post(url, body, contentType, headers);
+                case DOWNLOAD:
+                    return provider.downloadFile(url, headers, contentType);
+                default:
+                    return provider.get(url, headers);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return type + " " + url;
+        }
+    }
+
+    /**
+     * Result of one request of a {@link #batch(List)}: either a response or a failure.
+     */
+    class BatchResult implements Serializable {
+        public final Request request;
+        public final Response response;
+        public final IOException failure;
+
+        public BatchResult(Request request, Response response, IOException failure) {
+            this.request = request;
+            this.response = response;
+            this.failure = failure;
+        }
+
+        /**
+         * Indicates whether a response has been received, whatever its HTTP status code.
+         *
+         * @return {@code true} if {@link #response} is available; otherwise {@link #failure} is set
+         */
+        public boolean isSuccess() {
+            return failure == null;
+        }
+
+        /**
+         * Returns the response or throws the failure, convenient when a single error must abort the collect.
+         *
+         * @return the response
+         * @throws IOException the failure of this request
+         */
+        public Response getOrThrow() throws IOException {
+            if (failure != null) {
+                throw failure;
+            }
+            return response;
+        }
+    }
+
     /**
      * Represents an HTTP response including body, headers
+     * <p>
+     * The body is either given as text to the constructor, or as raw bytes to one of the {@code ofBytes} factories.
+     * Raw bodies are only decoded when {@link #getBody()} is called, using the charset of the {@code Content-Type}
+     * header (UTF-8 if none), and the decoded text is kept. Collectors feeding a parser that reads bytes should use
+     * {@link #getBodyBytes()} or {@link #getBodyBuffer()} to avoid the decoding entirely.
      */
     class Response implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
         public final int code;
         public final String message;
         public final String method;
         public final String location;
         public final String protocol;
+        /**
+         * The body as given to the constructor, {@code null} when the response has been created from raw bytes:
+         * {@link #getBody()} works in both cases.
+         */
         public final String body;
+        /**
+         * The headers, repeated headers being joined. Prefer {@link #getHeaders()} which keeps every value
+         * and looks names up case-insensitively.
+         */
         public final Map<String, String> headers;
+        private final byte[] bodyBytes;
+        private volatile HttpHeaders httpHeaders;
+        private final long transferredBytes;
+        private final long decodedBytes;
+        private transient volatile String decodedBody;
 
         public Response(int code, String message, String method, String location, String protocol, String body, Map<String, String> headers) {
+            this(code, message, method, location, protocol, body, null, headers, null, -1, -1);
+        }
+
+        /**
+         * Creates a response from a raw body, decoded only if {@link #getBody()} is called.
+         *
+         * @param code      HTTP status code
+         * @param message   HTTP status message
+         * @param method    HTTP method of the request
+         * @param location  final URL of the response
+         * @param protocol  protocol of the response, for example {@code HTTP/2}
+         * @param bodyBytes body, {@code null} if there is none
+         * @param headers   response headers
+         * @return the response
+         */
+        public static Response ofBytes(int code, String message, String method, String location, String protocol, byte[] bodyBytes,
+                                       Map<String, String> headers) {
+            return new Response(code, message, method, location, protocol, null, bodyBytes, headers, null, -1, -1);
+        }
+
+        /**
+         * Creates a response from a raw body and multi-valued headers.
+         *
+         * @param code      HTTP status code
+         * @param message   HTTP status message
+         * @param method    HTTP method of the request
+         * @param location  final URL of the response
+         * @param protocol  protocol of the response, for example {@code HTTP/2}
+         * @param bodyBytes body, {@code null} if there is none
+         * @param headers   response headers
+         * @return the response
+         */
+        public static Response ofBytes(int code, String message, String method, String location, String protocol, byte[] bodyBytes,
+                                       HttpHeaders headers) {
+            return ofBytes(code, message, method, location, protocol, bodyBytes, headers, -1, -1);
+        }
+
+        /**
+         * Creates a response from a body received compressed.
+         *
+         * @param code             HTTP status code
+         * @param message          HTTP status message
+         * @param method           HTTP method of the request
+         * @param location         final URL of the response
+         * @param protocol         protocol of the response, for example {@code HTTP/2}
+         * @param bodyBytes        decoded body
+         * @param headers          response headers
+         * @param transferredBytes number of body bytes received from the network, {@code -1} if unknown
+         * @param decodedBytes     number of body bytes after decompression, {@code -1} if unknown
+         * @return the response
+         */
+        public static Response ofBytes(int code, String message, String method, String location, String protocol, byte[] bodyBytes,
+                                       HttpHeaders headers, long transferredBytes, long decodedBytes) {
+            return new Response(code, message, method, location, protocol, null, bodyBytes, Collections.unmodifiableMap(headers.toMap()),
+                    headers, transferredBytes, decodedBytes);
+        }
+
+        private Response(int code, String message, String method, String location, String protocol, String body, byte[] bodyBytes,
+                         Map<String, String> headers, HttpHeaders httpHeaders, long transferredBytes, long decodedBytes) {
             this.code = code;
             this.message = message;
             this.method = method;
             this.location = location;
             this.protocol = protocol;
             this.body = body;
+            this.bodyBytes = bodyBytes;
+            this.headers = headers;
+            this.httpHeaders = httpHeaders;
+            this.transferredBytes = transferredBytes;
+            this.decodedBytes = decodedBytes;
+        }
+
+        /**
+         * Returns the size of the body as received from the network, compressed if the server compressed it.
+         *
+         * @return the number of bytes, or {@code -1} if unknown
+         */
+        public long getTransferredBytes() {
+            return transferredBytes;
+        }
+
+        /**
+         * Returns the size of the body once decompressed.
+         *
+         * @return the number of bytes, or {@code -1} if unknown
+         */
+        public long getDecodedBytes() {
+            return decodedBytes;
+        }
+
+        /**
+         * Returns the headers, with every value of repeated headers.
+         *
+         * @return the headers, never {@code null}
+         */
+        public HttpHeaders getHeaders() {
+            HttpHeaders result = httpHeaders;
+            if (result == null) {
+                result = HttpHeaders.of(headers);
+                httpHeaders = result;
+            }
+            return result;
+        }
+
+        /**
+         * Returns the first value of a header.
+         *
+         * @param name the header name, case-insensitive
+         * @return the value, or {@code null} if the header is absent
+         */
+        public String getHeader(String name) {
+            return getHeaders().get(name);
+        }
+
+        /**
+         * Returns the body as text, decoding it on first call if it has been received as raw bytes.
+         *
+         * @return the body, or {@code null} if there is none
+         */
+        public String getBody() {
+            if (body != null || bodyBytes == null) {
+                return body;
+            }
+            String decoded = decodedBody;
+            if (decoded == null) {
+                decoded = new String(bodyBytes, getCharset());
+                decodedBody = decoded;
+            }
+            return decoded;
+        }
+
+        /**
+         * Returns the body as raw bytes. The returned array must not be modified.
+         *
+         * @return the body bytes, or {@code null} if there is none
+         */
+        public byte[] getBodyBytes() {
+            if (bodyBytes != null || body == null) {
+                return bodyBytes;
+            }
+            return body.getBytes(getCharset());
+        }
+
+        /**
+         * Returns the body as a read-only buffer, without copying it when it has been received as raw bytes.
+         *
+         * @return the body buffer, empty if there is no body
+         */
+        public ByteBuffer getBodyBuffer() {
+            byte[] bytes = getBodyBytes();
+            return bytes == null ? ByteBuffer.allocate(0).asReadOnlyBuffer() : ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+        }
+
+        /**
+         * Indicates whether this response carries a body.
+         *
+         * @return {@code true} if a body is available
+         */
+        public boolean hasBody() {
+            return body != null || bodyBytes != null;
+        }
+
+        /**
+         * Returns the charset declared in the {@code Content-Type} header.
+         *
+         * @return the declared charset, or UTF-8 if none is declared or it is not supported
+         */
+        public Charset getCharset() {
+            return charsetOf(getHeader("Content-Type"));
+        }
+
+        /**
+         * Extracts the charset parameter of a content type, for example {@code text/html; charset=ISO-8859-1}.
+         *
+         * @param contentType the content type, may be {@code null}
+         * @return the declared charset, or UTF-8 if none is declared or it is not supported
+         */
+        public static Charset charsetOf(String contentType) {
+            if (contentType != null) {
+                for (String parameter : contentType.split(";")) {
+                    String trimmed = parameter.trim();
+                    if (trimmed.regionMatches(true, 0, "charset=", 0, 8)) {
+                        String name = trimmed.substring(8).replace("\"", "").trim();
+                        try {
+                            return Charset.forName(name);
+                        } catch (IllegalArgumentException e) {
+                            break;
+                        }
+                    }
+                }
+            }
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+    /**
+     * Represents an HTTP response whose body is read on demand.
+     * <p>
+     * Closing the response releases the underlying connection, whether or not the body has been fully read.
+     */
+    class StreamResponse implements Closeable {
+        public final int code;
+        public final String message;
+        public final String method;
+        public final String location;
+        public final String protocol;
+        public final Map<String, String> headers;
+        private final InputStream body;
+        private HttpHeaders httpHeaders;
+
+        public StreamResponse(int code, String message, String method, String location, String protocol, Map<String, String> headers, InputStream body) {
+            this.code = code;
+            this.message = message;
+            this.method = method;
+            this.location = location;
+            this.protocol = protocol;
             this.headers = headers;
+            this.body = body;
+        }
+
+        /**
+         * Wraps a fully read response, used when the provider cannot stream.
+         *
+         * @param response the response to wrap
+         * @return a stream response reading from the response body
+         */
+        public static StreamResponse of(Response response) {
+            byte[] bytes = response.hasBody() ? response.getBodyBytes() : new byte[0];
+            return new StreamResponse(response.code, response.message, response.method, response.location,
+                    response.protocol, response.headers, new ByteArrayInputStream(bytes));
+        }
+
+        /**
+         * Returns the headers, with every value of repeated headers.
+         *
+         * @return the headers, never {@code null}
+         */
+        public HttpHeaders getHeaders() {
+            if (httpHeaders == null) {
+                httpHeaders = HttpHeaders.of(headers);
+            }
+            return httpHeaders;
+        }
+
+        /**
+         * Returns the first value of a header.
+         *
+         * @param name the header name, case-insensitive
+         * @return the value, or {@code null} if the header is absent
+         */
+        public String getHeader(String name) {
+            return getHeaders().get(name);
+        }
+
+        /**
+         * Returns the body as a stream, it can only be consumed once.
+         *
+         * @return the body stream
+         */
+        public InputStream getBody() {
+            return body;
+        }
+
+        /**
+         * Returns the body as a channel, it can only be consumed once.
+         *
+         * @return the body channel
+         */
+        public ReadableByteChannel getChannel() {
+            return Channels.newChannel(body);
+        }
+
+        @Override
+        public void close() throws IOException {
+            body.close();
         }
     }
 }
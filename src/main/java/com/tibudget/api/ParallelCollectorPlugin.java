@@ -0,0 +1,64 @@
+package com.tibudget.api;
+
+import com.tibudget.api.exceptions.*;
+import com.tibudget.dto.AccountDto;
+
+import java.util.List;
+
+/**
+ * Optional capability of a {@link CollectorPlugin} able to collect its accounts independently.
+ * <p>
+ * The collect is split in two steps: {@link #collectAccounts()} logs in and lists the accounts, then
+ * {@link #collectAccount(AccountDto)} collects the transactions of one account. The host may call
+ * {@link #collectAccount(AccountDto)} concurrently for different accounts, with at most
+ * {@link #getMaxParallelism()} calls at the same time, so implementations must be thread-safe.
+ * The login state obtained by {@link #collectAccounts()} (session, cookies, tokens) is shared by all the calls.
+ * <p>
+ * Hosts that do not schedule accounts themselves simply call {@link #collect()}, which runs both steps sequentially.
+ */
+public interface ParallelCollectorPlugin extends CollectorPlugin {
+
+    /**
+     * Logs in and retrieves the accounts to collect. The returned accounts must also be returned by {@link #getAccounts()}.
+     *
+     * @return the accounts to collect
+     * @throws CollectError         if an error occurs during the collect process (e.g., parsing issues).
+     * @throws AccessDeny           if access is denied due to incorrect credentials.
+     * @throws TemporaryUnavailable if the target website is temporarily unavailable (e.g., maintenance mode).
+     * @throws ConnectionFailure    if the connection to the website fails due to network issues.
+     * @throws ParameterError       if one or more provided parameters are incorrect.
+     */
+    List<AccountDto> collectAccounts() throws CollectError, AccessDeny, TemporaryUnavailable, ConnectionFailure, ParameterError;
+
+    /**
+     * Collects the transactions of one account returned by {@link #collectAccounts()}.
+     * This method may be called concurrently for different accounts.
+     *
+     * @param account the account to collect
+     * @throws CollectError         if an error occurs during the collect process (e.g., parsing issues).
+     * @throws AccessDeny           if access is denied due to incorrect credentials.
+     * @throws TemporaryUnavailable if the target website is temporarily unavailable (e.g., maintenance mode).
+     * @throws ConnectionFailure    if the connection to the website fails due to network issues.
+     * @throws ParameterError       if one or more provided parameters are incorrect.
+     */
+    void collectAccount(AccountDto account) throws CollectError, AccessDeny, TemporaryUnavailable, ConnectionFailure, ParameterError;
+
+    /**
+     * Returns the maximum number of accounts that can be collected at the same time, as tolerated by the provider.
+     *
+     * @return the parallelism cap, {@code 1} meaning sequential
+     */
+    default int getMaxParallelism() {
+        return 4;
+    }
+
+    /**
+     * Collects every account sequentially.
+     */
+    @Override
+    default void collect() throws CollectError, AccessDeny, TemporaryUnavailable, ConnectionFailure, ParameterError {
+        for (AccountDto account : collectAccounts()) {
+            collectAccount(account);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.tibudget.api;
+
+import java.io.Serializable;
+
+/**
+ * Receives the progress of a collect as it happens, instead of the host polling {@link CollectorPlugin#getProgress()}.
+ * <p>
+ * Collectors may report progress as often as they like: the host coalesces events before updating its UI.
+ * Implementations provided by the host are thread-safe and never block.
+ */
+@FunctionalInterface
+public interface ProgressListener {
+
+    /**
+     * Steps of a collect, in their usual order.
+     */
+    enum Phase {
+        /** Authenticating to the provider */
+        LOGIN,
+        /** Waiting for a one-time password, see {@link OTPProvider} */
+        OTP_WAIT,
+        /** Retrieving the accounts */
+        ACCOUNTS,
+        /** Retrieving the transactions */
+        TRANSACTIONS,
+        /** Downloading files (invoices, receipts, etc.) */
+        FILES,
+        /** The collect is over */
+        DONE
+    }
+
+    /**
+     * Called each time the collector makes progress.
+     *
+     * @param event the current progress
+     */
+    void onProgress(Event event);
+
+    /**
+     * Snapshot of the progress of a collect.
+     */
+    final class Event implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        public final Phase phase;
+        /** Overall progress, between 0 and 100 (inclusive), as returned by {@link CollectorPlugin#getProgress()} */
+        public final int progress;
+        /** Number of items (accounts, transactions or files depending on the phase) emitted so far */
+        public final long itemCount;
+        /** Number of bytes downloaded since the beginning of the collect */
+        public final long bytesDownloaded;
+        /** Time of the event, in milliseconds since the epoch */
+        public final long timestamp;
+
+        public Event(Phase phase, int progress, long itemCount, long bytesDownloaded) {
+            this(phase, progress, itemCount, bytesDownloaded, System.currentTimeMillis());
+        }
+
+        public Event(Phase phase, int progress, long itemCount, long bytesDownloaded, long timestamp) {
+            if (phase == null) {
+                throw new IllegalArgumentException("phase is mandatory");
+            }
+            this.phase = phase;
+            this.progress = Math.max(0, Math.min(100, progress));
+            this.itemCount = itemCount;
+            this.bytesDownloaded = bytesDownloaded;
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public String toString() {
+            return "Event{" +
+                    "phase=" + phase +
+                    ", progress=" + progress +
+                    ", itemCount=" + itemCount +
+                    ", bytesDownloaded=" + bytesDownloaded +
+                    ", timestamp=" + timestamp +
+                    '}';
+        }
+    }
+}
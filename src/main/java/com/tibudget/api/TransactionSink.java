@@ -0,0 +1,44 @@
+package com.tibudget.api;
+
+import com.tibudget.api.exceptions.CollectError;
+import com.tibudget.dto.TransactionDto;
+
+/**
+ * Receives transactions while a collect is running, so that the host can persist, deduplicate and index them
+ * without waiting for the end of {@link CollectorPlugin#collect()}.
+ * <p>
+ * The host applies back-pressure by blocking {@link #accept(TransactionDto)} until it has caught up, which keeps
+ * the memory used by a long history import bounded. Implementations provided by the host are thread-safe.
+ */
+public interface TransactionSink {
+
+    /**
+     * Pushes a transaction. The transaction must not be modified once pushed.
+     * <p>
+     * This method may block while the host processes previously pushed transactions.
+     *
+     * @param transaction the collected transaction, associated with an account returned by {@link CollectorPlugin#getAccounts()}
+     * @throws CollectError if the host cannot process the transaction, the collect should then be aborted
+     */
+    void accept(TransactionDto transaction) throws CollectError;
+
+    /**
+     * Pushes several transactions.
+     *
+     * @param transactions the collected transactions
+     * @throws CollectError if the host cannot process a transaction, the collect should then be aborted
+     */
+    default void acceptAll(Iterable<TransactionDto> transactions) throws CollectError {
+        for (TransactionDto transaction : transactions) {
+            accept(transaction);
+        }
+    }
+
+    /**
+     * Asks the host to process every transaction pushed so far before returning, typically before saving
+     * a checkpoint or at the end of an account.
+     *
+     * @throws CollectError if the host cannot process the transactions
+     */
+    void flush() throws CollectError;
+}
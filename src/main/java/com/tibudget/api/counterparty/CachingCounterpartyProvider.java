@@ -0,0 +1,349 @@
+package com.tibudget.api.counterparty;
+
+import com.tibudget.api.CounterpartyProvider;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link CounterpartyProvider} decorator caching lookups, so that merchants appearing in many transactions are
+ * resolved once.
+ * <p>
+ * Found counterparties are kept in a least recently used cache bounded in number of entries and in estimated memory.
+ * Misses are kept in a separate, smaller cache, each entry expiring after a time to live so that a counterparty
+ * created meanwhile is eventually found. A Bloom filter of misses is deliberately not used: its false positives would
+ * hide existing counterparties, and it cannot forget a value once the counterparty has been created.
+ * <p>
+ * Entries are keyed by {@code (metadataKey, value)}. Lookups rejected by the delegate with an
+ * {@link IllegalArgumentException} are never cached, so without registry the cache only holds entries for keys the
+ * delegate has accepted, and lookups with a {@code null} key, {@code null} values or an empty batch are passed to the
+ * delegate untouched so that it still validates the key. When a {@link CounterpartyMetadataRegistry} is given, invalid keys are rejected before reaching the cache
+ * nor the delegate. Batch lookups only send the values missing from the cache to
+ * {@link CounterpartyProvider#findAll(String, Collection)}. This class is thread-safe; the delegate is called outside
+ * of any lock.
+ */
+public class CachingCounterpartyProvider implements CounterpartyProvider {
+
+    /** Estimated memory of an entry besides its strings: key object, map node and references. */
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private static final class Key {
+
+        private final String metadataKey;
+
+        private final Object value;
+
+        private Key(String metadataKey, Object value) {
+            this.metadataKey = metadataKey;
+            this.value = value;
+        }
+
+        private int estimatedBytes() {
+            int valueBytes = value instanceof String ? 2 * ((String) value).length() : 16;
+            return ENTRY_OVERHEAD_BYTES + 2 * metadataKey.length() + valueBytes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return metadataKey.equals(key.metadataKey) && value.equals(key.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * metadataKey.hashCode() + value.hashCode();
+        }
+    }
+
+    private final CounterpartyProvider delegate;
+
+    private final CounterpartyMetadataRegistry registry;
+
+    private final long maxBytes;
+
+    private final int maxEntries;
+
+    private final int maxNegativeEntries;
+
+    private final long negativeTtlMillis;
+
+    /** Found counterparties, in access order so the eldest entry is the least recently used. */
+    private final LinkedHashMap<Key, String> hits = new LinkedHashMap<>(256, 0.75f, true);
+
+    /** Values without counterparty and the time their entry expires, in insertion order. */
+    private final LinkedHashMap<Key, Long> misses = new LinkedHashMap<>(256, 0.75f, false);
+
+    private long totalBytes;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong negativeHitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Creates a caching provider.
+     *
+     * @param delegate           the provider answering lookups missing from the cache
+     * @param maxBytes           maximum estimated memory of found counterparties, in bytes
+     * @param maxEntries         maximum number of found counterparties
+     * @param maxNegativeEntries maximum number of values without counterparty
+     * @param negativeTtl        how long a value without counterparty is remembered
+     */
+    public CachingCounterpartyProvider(CounterpartyProvider delegate, long maxBytes, int maxEntries, int maxNegativeEntries, Duration negativeTtl) {
+        this(delegate, null, maxBytes, maxEntries, maxNegativeEntries, negativeTtl);
+    }
+
+    /**
+     * Creates a caching provider validating metadata keys before any lookup, so that invalid keys are rejected
+     * without reaching the cache nor the delegate.
+     *
+     * @param delegate           the provider answering lookups missing from the cache
+     * @param registry           the registry of the keys known by the host, {@code null} to let the delegate validate
+     * @param maxBytes           maximum estimated memory of found counterparties, in bytes
+     * @param maxEntries         maximum number of found counterparties
+     * @param maxNegativeEntries maximum number of values without counterparty
+     * @param negativeTtl        how long a value without counterparty is remembered
+     */
+    public CachingCounterpartyProvider(CounterpartyProvider delegate, CounterpartyMetadataRegistry registry, long maxBytes,
+                                       int maxEntries, int maxNegativeEntries, Duration negativeTtl) {
+        if (delegate == null || negativeTtl == null) {
+            throw new IllegalArgumentException("delegate and negativeTtl are mandatory");
+        }
+        if (maxBytes < 1 || maxEntries < 1 || maxNegativeEntries < 0) {
+            throw new IllegalArgumentException("maxBytes and maxEntries must be greater than 0, maxNegativeEntries must not be negative");
+        }
+        this.delegate = delegate;
+        this.registry = registry;
+        this.maxBytes = maxBytes;
+        this.maxEntries = maxEntries;
+        this.maxNegativeEntries = maxNegativeEntries;
+        this.negativeTtlMillis = negativeTtl.toMillis();
+    }
+
+    @Override
+    public String find(String metadataKey, String valueString) {
+        metadataKey = validate(metadataKey, false);
+        if (metadataKey == null || valueString == null) {
+            // Let the delegate decide how to handle invalid arguments
+            return delegate.find(metadataKey, valueString);
+        }
+        return find(metadataKey, (Object) valueString);
+    }
+
+    @Override
+    public String find(String metadataKey, Double valueNumeric) {
+        metadataKey = validate(metadataKey, true);
+        if (metadataKey == null || valueNumeric == null) {
+            return delegate.find(metadataKey, valueNumeric);
+        }
+        return find(metadataKey, (Object) valueNumeric);
+    }
+
+    @Override
+    public Map<String, String> findAll(String metadataKey, Collection<String> valuesString) {
+        metadataKey = validate(metadataKey, false);
+        if (metadataKey == null || valuesString == null || !hasValue(valuesString)) {
+            return delegate.findAll(metadataKey, valuesString);
+        }
+        Map<String, String> result = new HashMap<>();
+        Set<String> missing = new HashSet<>();
+        lookupCached(metadataKey, valuesString, result, missing);
+        if (!missing.isEmpty()) {
+            store(metadataKey, missing, delegate.findAll(metadataKey, missing), result);
+        }
+        return result;
+    }
+
+    @Override
+    public Map<Double, String> findAllNumeric(String metadataKey, Collection<Double> valuesNumeric) {
+        metadataKey = validate(metadataKey, true);
+        if (metadataKey == null || valuesNumeric == null || !hasValue(valuesNumeric)) {
+            return delegate.findAllNumeric(metadataKey, valuesNumeric);
+        }
+        Map<Double, String> result = new HashMap<>();
+        Set<Double> missing = new HashSet<>();
+        lookupCached(metadataKey, valuesNumeric, result, missing);
+        if (!missing.isEmpty()) {
+            store(metadataKey, missing, delegate.findAllNumeric(metadataKey, missing), result);
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of lookups answered with a cached counterparty
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of lookups answered with a cached absence of counterparty
+     */
+    public long getNegativeHitCount() {
+        return negativeHitCount.get();
+    }
+
+    /**
+     * @return the number of lookups sent to the delegate
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return the number of found counterparties evicted to respect the bounds
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * @return the ratio of lookups answered from the cache, between 0 and 1
+     */
+    public double getHitRatio() {
+        long cached = hitCount.get() + negativeHitCount.get();
+        long total = cached + missCount.get();
+        return total == 0 ? 0 : (double) cached / total;
+    }
+
+    /**
+     * @return the number of cached found counterparties
+     */
+    public synchronized int size() {
+        return hits.size();
+    }
+
+    /**
+     * @return the estimated memory of the cached found counterparties, in bytes
+     */
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Forgets every cached lookup, for example after counterparties have been merged.
+     */
+    public synchronized void clear() {
+        hits.clear();
+        misses.clear();
+        totalBytes = 0;
+    }
+
+    /**
+     * Validates the key if a registry is set, returning the name of the registered key.
+     */
+    /**
+     * Batches without any value are left to the delegate, which still has to validate the key.
+     */
+    private static boolean hasValue(Collection<?> values) {
+        for (Object value : values) {
+            if (value != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String validate(String metadataKey, boolean numeric) {
+        return registry == null ? metadataKey : registry.validate(metadataKey, numeric).getKey();
+    }
+
+    private String find(String metadataKey, Object value) {
+        Key key = new Key(metadataKey, value);
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            String uuid = hits.get(key);
+            if (uuid != null) {
+                hitCount.incrementAndGet();
+                return uuid;
+            }
+            if (isCachedMiss(key, now)) {
+                negativeHitCount.incrementAndGet();
+                return null;
+            }
+        }
+        missCount.incrementAndGet();
+        String uuid = value instanceof Double ? delegate.find(metadataKey, (Double) value) : delegate.find(metadataKey, (String) value);
+        synchronized (this) {
+            put(key, uuid, now);
+        }
+        return uuid;
+    }
+
+    private <V> void lookupCached(String metadataKey, Collection<V> values, Map<V, String> result, Set<V> missing) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            for (V value : values) {
+                if (value == null || result.containsKey(value) || missing.contains(value)) {
+                    continue;
+                }
+                Key key = new Key(metadataKey, value);
+                String uuid = hits.get(key);
+                if (uuid != null) {
+                    hitCount.incrementAndGet();
+                    result.put(value, uuid);
+                } else if (isCachedMiss(key, now)) {
+                    negativeHitCount.incrementAndGet();
+                } else {
+                    missing.add(value);
+                }
+            }
+        }
+        missCount.addAndGet(missing.size());
+    }
+
+    private synchronized <V> void store(String metadataKey, Set<V> requested, Map<V, String> found, Map<V, String> result) {
+        long now = System.currentTimeMillis();
+        for (V value : requested) {
+            String uuid = found.get(value);
+            put(new Key(metadataKey, value), uuid, now);
+            if (uuid != null) {
+                result.put(value, uuid);
+            }
+        }
+    }
+
+    private boolean isCachedMiss(Key key, long now) {
+        Long expiry = misses.get(key);
+        if (expiry == null) {
+            return false;
+        }
+        if (expiry <= now) {
+            misses.remove(key);
+            return false;
+        }
+        return true;
+    }
+
+    private void put(Key key, String uuid, long now) {
+        if (uuid == null) {
+            if (maxNegativeEntries > 0) {
+                misses.remove(key);
+                misses.put(key, now + negativeTtlMillis);
+                // Insertion order: the eldest entry is also the first to expire
+                Iterator<Long> it = misses.values().iterator();
+                while (misses.size() > maxNegativeEntries && it.hasNext()) {
+                    it.next();
+                    it.remove();
+                }
+            }
+            return;
+        }
+        misses.remove(key);
+        String previous = hits.put(key, uuid);
+        if (previous == null) {
+            totalBytes += key.estimatedBytes() + 2L * uuid.length();
+        } else {
+            totalBytes += 2L * (uuid.length() - previous.length());
+        }
+        Iterator<Map.Entry<Key, String>> it = hits.entrySet().iterator();
+        while ((hits.size() > maxEntries || totalBytes > maxBytes) && it.hasNext()) {
+            Map.Entry<Key, String> eldest = it.next();
+            totalBytes -= eldest.getKey().estimatedBytes() + 2L * eldest.getValue().length();
+            it.remove();
+            evictionCount.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,607 @@
+package com.tibudget.api.counterparty;
+
+import com.tibudget.api.CounterpartyMetadataCoreKeys;
+import com.tibudget.api.CounterpartyMetadataKey;
+import com.tibudget.api.CounterpartyProvider;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * In-memory {@link CounterpartyProvider} answering lookups from one hash index per unique metadata key.
+ * <p>
+ * String values are stored UTF-8 encoded in a byte arena, next to the counterparty UUID stored as two {@code long}.
+ * Numeric values are stored as the bits of their {@code double}, so lookups never box. Every structure lives in
+ * {@link ByteBuffer}s: the index can be written to a snapshot file with {@link #writeSnapshot(Path)}, and
+ * {@link #load(Path)} memory-maps that file instead of rebuilding the index, making startup independent of the
+ * number of counterparties.
+ * <p>
+ * Indexes exist for the unique keys of {@link CounterpartyMetadataCoreKeys}; validated custom keys are added with
+ * {@link #declareKey(CounterpartyMetadataKey)}, or come from the {@link CounterpartyMetadataRegistry} given to the
+ * constructor. Counterparty UUIDs must be canonical UUIDs, lower-case with hyphens, as they are stored as two
+ * {@code long} and returned in that form. Each index is limited to about
+ * 2 GB of values, which is a few tens of millions of counterparties per key.
+ * <p>
+ * Filling the index is not thread-safe. Once filled, or once loaded from a snapshot, lookups can be performed
+ * concurrently.
+ */
+public class CounterpartyIndex implements CounterpartyProvider {
+
+    private static final int FILE_MAGIC = 0x43504931; // "CPI1"
+
+    private static final byte KIND_STRING = 0;
+
+    private static final byte KIND_NUMERIC = 1;
+
+    private static final float MAX_LOAD = 0.5f;
+
+    private static final int MAX_KEY_BYTES = 0xFFFF;
+
+    private final Map<String, Table> tables = new HashMap<>();
+
+    private final boolean readOnly;
+
+    /**
+     * Creates an empty index for the unique keys of {@link CounterpartyMetadataCoreKeys}.
+     */
+    public CounterpartyIndex() {
+        this(false);
+        for (CounterpartyMetadataCoreKeys key : CounterpartyMetadataCoreKeys.values()) {
+            if (key.isUnique()) {
+                declareKey(key);
+            }
+        }
+    }
+
+    /**
+     * Creates an empty index for the unique keys of a registry, core and custom.
+     *
+     * @param registry the registry of the keys known by the host
+     */
+    public CounterpartyIndex(CounterpartyMetadataRegistry registry) {
+        this(false);
+        for (CounterpartyMetadataKey key : registry.getAll()) {
+            if (key.isUnique()) {
+                declareKey(key);
+            }
+        }
+    }
+
+    private CounterpartyIndex(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * Adds an index for a metadata key.
+     *
+     * @param key the key definition
+     * @throws IllegalArgumentException if the key is not unique
+     */
+    public void declareKey(CounterpartyMetadataKey key) {
+        if (!key.isUnique()) {
+            throw new IllegalArgumentException("Metadata key " + key.getKey() + " is not unique");
+        }
+        declareKey(key.getKey(), key.isNumeric());
+    }
+
+    /**
+     * Adds an index for a custom metadata key, which must have been validated as unique.
+     *
+     * @param metadataKey the metadata key
+     * @param numeric     {@code true} if the values are numeric
+     */
+    public void declareKey(String metadataKey, boolean numeric) {
+        checkWritable();
+        if (metadataKey == null || metadataKey.getBytes(StandardCharsets.UTF_8).length > MAX_KEY_BYTES) {
+            throw new IllegalArgumentException("metadataKey is mandatory and limited to " + MAX_KEY_BYTES + " bytes");
+        }
+        Table table = tables.get(metadataKey);
+        if (table == null) {
+            tables.put(metadataKey, numeric ? new NumericTable(16) : new StringTable(16));
+        } else if (table.isNumeric() != numeric) {
+            throw new IllegalArgumentException("Metadata key " + metadataKey + " is already declared with another type");
+        }
+    }
+
+    /**
+     * Indexes a string value of a counterparty, replacing the counterparty previously indexed for the same value.
+     *
+     * @param metadataKey      the unique metadata key
+     * @param value            the value
+     * @param counterpartyUuid the counterparty UUID, in canonical form
+     */
+    public void put(String metadataKey, String value, String counterpartyUuid) {
+        checkWritable();
+        if (value == null) {
+            throw new IllegalArgumentException("value is mandatory");
+        }
+        UUID uuid = parseUuid(counterpartyUuid);
+        ((StringTable) table(metadataKey, false)).put(value.getBytes(StandardCharsets.UTF_8), uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    /**
+     * Indexes a numeric value of a counterparty, replacing the counterparty previously indexed for the same value.
+     *
+     * @param metadataKey      the unique metadata key
+     * @param value            the value, not {@code NaN}
+     * @param counterpartyUuid the counterparty UUID, in canonical form
+     */
+    public void put(String metadataKey, double value, String counterpartyUuid) {
+        checkWritable();
+        if (Double.isNaN(value)) {
+            throw new IllegalArgumentException("NaN cannot be indexed");
+        }
+        UUID uuid = parseUuid(counterpartyUuid);
+        ((NumericTable) table(metadataKey, true)).put(bits(value), uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    @Override
+    public String find(String metadataKey, String valueString) {
+        StringTable table = (StringTable) table(metadataKey, false);
+        if (valueString == null) {
+            return null;
+        }
+        return table.find(valueString.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public String find(String metadataKey, Double valueNumeric) {
+        NumericTable table = (NumericTable) table(metadataKey, true);
+        if (valueNumeric == null || valueNumeric.isNaN()) {
+            return null;
+        }
+        return table.find(bits(valueNumeric));
+    }
+
+    /**
+     * Returns the number of values indexed for a key.
+     *
+     * @param metadataKey the metadata key
+     * @return the number of values, 0 if the key has no index
+     */
+    public int size(String metadataKey) {
+        Table table = tables.get(metadataKey);
+        return table == null ? 0 : table.size;
+    }
+
+    /**
+     * Writes the index to a snapshot file, atomically replacing it, to be loaded later with {@link #load(Path)}.
+     *
+     * @param file the snapshot file
+     * @throws IOException if the file cannot be written
+     */
+    public void writeSnapshot(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(8);
+            header.putInt(FILE_MAGIC).putInt(tables.size()).flip();
+            writeFully(channel, header);
+            for (Map.Entry<String, Table> entry : tables.entrySet()) {
+                byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                Table table = entry.getValue();
+                ByteBuffer[] buffers = table.buffers();
+                ByteBuffer tableHeader = ByteBuffer.allocate(4 + key.length + 1 + 4 + 4 + 4 * buffers.length);
+                tableHeader.putInt(key.length).put(key).put(table.isNumeric() ? KIND_NUMERIC : KIND_STRING)
+                        .putInt(table.capacity).putInt(table.size);
+                for (ByteBuffer buffer : buffers) {
+                    tableHeader.putInt(buffer.remaining());
+                }
+                tableHeader.flip();
+                writeFully(channel, tableHeader);
+                for (ByteBuffer buffer : buffers) {
+                    writeFully(channel, buffer);
+                }
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads a snapshot written by {@link #writeSnapshot(Path)} by memory-mapping it. The returned index is read-only.
+     * <p>
+     * The structure of the snapshot is checked, not every slot: a snapshot damaged inside its tables makes lookups
+     * fail with an {@link IllegalStateException}.
+     *
+     * @param file the snapshot file
+     * @return the index
+     * @throws IOException if the file cannot be read, is not a snapshot or is corrupted
+     */
+    public static CounterpartyIndex load(Path file) throws IOException {
+        CounterpartyIndex index = new CounterpartyIndex(true);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = readFully(channel, 8);
+            if (header.getInt() != FILE_MAGIC) {
+                throw new IOException("Not a counterparty index snapshot: " + file);
+            }
+            int tableCount = header.getInt();
+            if (tableCount < 0) {
+                throw corrupted(file, "table count " + tableCount);
+            }
+            for (int i = 0; i < tableCount; i++) {
+                int keyLength = readFully(channel, 4).getInt();
+                if (keyLength < 0 || keyLength > MAX_KEY_BYTES) {
+                    throw corrupted(file, "key length " + keyLength);
+                }
+                byte[] key = new byte[keyLength];
+                readFully(channel, key.length).get(key);
+                ByteBuffer tableHeader = readFully(channel, 1 + 4 + 4);
+                byte kind = tableHeader.get();
+                if (kind != KIND_NUMERIC && kind != KIND_STRING) {
+                    throw corrupted(file, "table kind " + kind);
+                }
+                boolean numeric = kind == KIND_NUMERIC;
+                int capacity = tableHeader.getInt();
+                int size = tableHeader.getInt();
+                int slotBytes = numeric ? NumericTable.SLOT_BYTES : StringTable.SLOT_BYTES;
+                if (capacity < 1 || Integer.bitCount(capacity) != 1 || (long) capacity * slotBytes > Integer.MAX_VALUE) {
+                    throw corrupted(file, "capacity " + capacity);
+                }
+                // A table is never more than half full, so probing always ends on an empty slot
+                if (size < 0 || size > capacity * MAX_LOAD) {
+                    throw corrupted(file, "size " + size + " for capacity " + capacity);
+                }
+                int bufferCount = numeric ? NumericTable.BUFFER_COUNT : StringTable.BUFFER_COUNT;
+                ByteBuffer lengths = readFully(channel, 4 * bufferCount);
+                ByteBuffer[] buffers = new ByteBuffer[bufferCount];
+                for (int b = 0; b < bufferCount; b++) {
+                    int length = lengths.getInt();
+                    // Every buffer but the arena of string values is sized after the capacity
+                    long expected = b == 0 ? (long) capacity * slotBytes : numeric ? capacity : -1;
+                    if (length < 0 || (expected >= 0 && length != expected)) {
+                        throw corrupted(file, "buffer length " + length + " for capacity " + capacity);
+                    }
+                    if (length > channel.size() - channel.position()) {
+                        throw new IOException("Truncated counterparty index snapshot: " + file);
+                    }
+                    buffers[b] = channel.map(FileChannel.MapMode.READ_ONLY, channel.position(), length);
+                    channel.position(channel.position() + length);
+                }
+                Table table = numeric ? new NumericTable(capacity, size, buffers) : new StringTable(capacity, size, buffers);
+                index.tables.put(new String(key, StandardCharsets.UTF_8), table);
+            }
+        }
+        // Mappings stay valid once the channel is closed
+        return index;
+    }
+
+    private Table table(String metadataKey, boolean numeric) {
+        if (metadataKey == null || metadataKey.trim().isEmpty()) {
+            throw new IllegalArgumentException("metadataKey is mandatory");
+        }
+        Table table = tables.get(metadataKey);
+        if (table == null) {
+            throw new IllegalArgumentException("Metadata key " + metadataKey + " is unknown or not unique");
+        }
+        if (table.isNumeric() != numeric) {
+            throw new IllegalArgumentException("Metadata key " + metadataKey + (numeric ? " is not numeric" : " is numeric"));
+        }
+        return table;
+    }
+
+    private static IOException corrupted(Path file, String detail) {
+        return new IOException("Corrupted counterparty index snapshot, invalid " + detail + ": " + file);
+    }
+
+    /**
+     * Parses a UUID, refusing the non-canonical forms accepted by {@link UUID#fromString(String)} (upper-case
+     * digits, missing leading zeros) which would be returned in another form by lookups.
+     */
+    private static UUID parseUuid(String counterpartyUuid) {
+        if (counterpartyUuid == null) {
+            throw new IllegalArgumentException("counterpartyUuid is mandatory");
+        }
+        UUID uuid = UUID.fromString(counterpartyUuid);
+        if (!uuid.toString().equals(counterpartyUuid)) {
+            throw new IllegalArgumentException("counterpartyUuid is not a canonical UUID: " + counterpartyUuid);
+        }
+        return uuid;
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new IllegalStateException("An index loaded from a snapshot is read-only");
+        }
+    }
+
+    /**
+     * Bits of a value, {@code -0.0} and {@code 0.0} being the same value.
+     */
+    private static long bits(double value) {
+        return Double.doubleToLongBits(value == 0 ? 0.0 : value);
+    }
+
+    private static int mix(long h) {
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return (int) (h ^ (h >>> 31));
+    }
+
+    private static String uuid(long msb, long lsb) {
+        return new UUID(msb, lsb).toString();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Truncated counterparty index snapshot");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private abstract static class Table {
+
+        int capacity;
+
+        int size;
+
+        abstract boolean isNumeric();
+
+        /**
+         * @return the buffers holding the table, positioned for writing to a snapshot
+         */
+        abstract ByteBuffer[] buffers();
+    }
+
+    /**
+     * Open addressing table of slots {@code (int hash, int offset + 1)} pointing into an arena of entries
+     * {@code (int length, byte[length] utf8, long msb, long lsb)}.
+     */
+    private static final class StringTable extends Table {
+
+        static final int BUFFER_COUNT = 2;
+
+        private static final int SLOT_BYTES = 8;
+
+        private ByteBuffer slots;
+
+        private ByteBuffer arena;
+
+        private int arenaLength;
+
+        StringTable(int capacity) {
+            this.capacity = capacity;
+            this.slots = ByteBuffer.allocate(capacity * SLOT_BYTES);
+            this.arena = ByteBuffer.allocate(1024);
+        }
+
+        StringTable(int capacity, int size, ByteBuffer[] buffers) {
+            this.capacity = capacity;
+            this.size = size;
+            this.slots = buffers[0];
+            this.arena = buffers[1];
+            this.arenaLength = arena.capacity();
+        }
+
+        @Override
+        boolean isNumeric() {
+            return false;
+        }
+
+        String find(byte[] value) {
+            int slot = slotOf(value, hash(value));
+            int offset = slots.getInt(slot * SLOT_BYTES + 4) - 1;
+            if (offset < 0) {
+                return null;
+            }
+            // matches() has checked that the whole entry lies in the arena
+            int uuidAt = offset + 4 + value.length;
+            return uuid(arena.getLong(uuidAt), arena.getLong(uuidAt + 8));
+        }
+
+        void put(byte[] value, long msb, long lsb) {
+            int hash = hash(value);
+            int slot = slotOf(value, hash);
+            int offset = slots.getInt(slot * SLOT_BYTES + 4) - 1;
+            if (offset >= 0) {
+                arena.putLong(offset + 4 + value.length, msb).putLong(offset + 4 + value.length + 8, lsb);
+                return;
+            }
+            int entryLength = 4 + value.length + 16;
+            ensureArena(entryLength);
+            offset = arenaLength;
+            arena.putInt(offset, value.length);
+            for (int i = 0; i < value.length; i++) {
+                arena.put(offset + 4 + i, value[i]);
+            }
+            arena.putLong(offset + 4 + value.length, msb).putLong(offset + 4 + value.length + 8, lsb);
+            arenaLength += entryLength;
+            slots.putInt(slot * SLOT_BYTES, hash).putInt(slot * SLOT_BYTES + 4, offset + 1);
+            if (++size > capacity * MAX_LOAD) {
+                grow();
+            }
+        }
+
+        @Override
+        ByteBuffer[] buffers() {
+            ByteBuffer usedArena = arena.duplicate();
+            usedArena.position(0).limit(arenaLength);
+            ByteBuffer allSlots = slots.duplicate();
+            allSlots.position(0).limit(capacity * SLOT_BYTES);
+            return new ByteBuffer[]{allSlots, usedArena};
+        }
+
+        /**
+         * Returns the slot holding the value, or the empty slot where it would be inserted.
+         */
+        private int slotOf(byte[] value, int hash) {
+            int mask = capacity - 1;
+            int slot = hash & mask;
+            for (int probes = 0; probes < capacity; probes++) {
+                int offset = slots.getInt(slot * SLOT_BYTES + 4) - 1;
+                if (offset < 0 || (slots.getInt(slot * SLOT_BYTES) == hash && matches(offset, value))) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            throw new IllegalStateException("Corrupted counterparty index: no free slot");
+        }
+
+        private boolean matches(int offset, byte[] value) {
+            if ((long) offset + 4 > arenaLength) {
+                throw new IllegalStateException("Corrupted counterparty index: entry out of the arena");
+            }
+            if (arena.getInt(offset) != value.length) {
+                return false;
+            }
+            if ((long) offset + 4 + value.length + 16 > arenaLength) {
+                throw new IllegalStateException("Corrupted counterparty index: entry out of the arena");
+            }
+            for (int i = 0; i < value.length; i++) {
+                if (arena.get(offset + 4 + i) != value[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void ensureArena(int length) {
+            if ((long) arenaLength + length > arena.capacity()) {
+                long newCapacity = Math.max((long) arenaLength + length, arena.capacity() * 2L);
+                if (newCapacity > Integer.MAX_VALUE - 8) {
+                    throw new IllegalStateException("Counterparty index is full");
+                }
+                ByteBuffer bigger = ByteBuffer.allocate((int) newCapacity);
+                ByteBuffer used = arena.duplicate();
+                used.position(0).limit(arenaLength);
+                bigger.put(used);
+                arena = bigger;
+            }
+        }
+
+        private void grow() {
+            ByteBuffer old = slots;
+            int oldCapacity = capacity;
+            if ((long) oldCapacity * 2 * SLOT_BYTES > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Counterparty index is full");
+            }
+            capacity = oldCapacity << 1;
+            slots = ByteBuffer.allocate(capacity * SLOT_BYTES);
+            int mask = capacity - 1;
+            for (int i = 0; i < oldCapacity; i++) {
+                int offset = old.getInt(i * SLOT_BYTES + 4);
+                if (offset != 0) {
+                    int hash = old.getInt(i * SLOT_BYTES);
+                    int slot = hash & mask;
+                    while (slots.getInt(slot * SLOT_BYTES + 4) != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    slots.putInt(slot * SLOT_BYTES, hash).putInt(slot * SLOT_BYTES + 4, offset);
+                }
+            }
+        }
+
+        private static int hash(byte[] value) {
+            long h = 0xcbf29ce484222325L;
+            for (byte b : value) {
+                h = (h ^ (b & 0xff)) * 0x100000001b3L;
+            }
+            return mix(h);
+        }
+    }
+
+    /**
+     * Open addressing table of slots {@code (long bits, long msb, long lsb)} with a separate occupancy byte per slot.
+     */
+    private static final class NumericTable extends Table {
+
+        static final int BUFFER_COUNT = 2;
+
+        private static final int SLOT_BYTES = 24;
+
+        private ByteBuffer slots;
+
+        private ByteBuffer used;
+
+        NumericTable(int capacity) {
+            this.capacity = capacity;
+            this.slots = ByteBuffer.allocate(capacity * SLOT_BYTES);
+            this.used = ByteBuffer.allocate(capacity);
+        }
+
+        NumericTable(int capacity, int size, ByteBuffer[] buffers) {
+            this.capacity = capacity;
+            this.size = size;
+            this.slots = buffers[0];
+            this.used = buffers[1];
+        }
+
+        @Override
+        boolean isNumeric() {
+            return true;
+        }
+
+        String find(long bits) {
+            int slot = slotOf(bits);
+            if (used.get(slot) == 0) {
+                return null;
+            }
+            return uuid(slots.getLong(slot * SLOT_BYTES + 8), slots.getLong(slot * SLOT_BYTES + 16));
+        }
+
+        void put(long bits, long msb, long lsb) {
+            int slot = slotOf(bits);
+            slots.putLong(slot * SLOT_BYTES, bits).putLong(slot * SLOT_BYTES + 8, msb).putLong(slot * SLOT_BYTES + 16, lsb);
+            if (used.get(slot) == 0) {
+                used.put(slot, (byte) 1);
+                if (++size > capacity * MAX_LOAD) {
+                    grow();
+                }
+            }
+        }
+
+        @Override
+        ByteBuffer[] buffers() {
+            ByteBuffer allSlots = slots.duplicate();
+            allSlots.position(0).limit(capacity * SLOT_BYTES);
+            ByteBuffer allUsed = used.duplicate();
+            allUsed.position(0).limit(capacity);
+            return new ByteBuffer[]{allSlots, allUsed};
+        }
+
+        private int slotOf(long bits) {
+            int mask = capacity - 1;
+            int slot = mix(bits) & mask;
+            for (int probes = 0; probes < capacity; probes++) {
+                if (used.get(slot) == 0 || slots.getLong(slot * SLOT_BYTES) == bits) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            throw new IllegalStateException("Corrupted counterparty index: no free slot");
+        }
+
+        private void grow() {
+            ByteBuffer oldSlots = slots;
+            ByteBuffer oldUsed = used;
+            int oldCapacity = capacity;
+            if ((long) oldCapacity * 2 * SLOT_BYTES > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Counterparty index is full");
+            }
+            capacity = oldCapacity << 1;
+            slots = ByteBuffer.allocate(capacity * SLOT_BYTES);
+            used = ByteBuffer.allocate(capacity);
+            size = 0;
+            for (int i = 0; i < oldCapacity; i++) {
+                if (oldUsed.get(i) != 0) {
+                    put(oldSlots.getLong(i * SLOT_BYTES), oldSlots.getLong(i * SLOT_BYTES + 8), oldSlots.getLong(i * SLOT_BYTES + 16));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.tibudget.api.counterparty;
+
+import com.tibudget.api.CounterpartyMetadataCoreKeys;
+import com.tibudget.api.CounterpartyMetadataKey;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the counterparty metadata keys known by a host: the {@link CounterpartyMetadataCoreKeys} plus the
+ * custom keys validated through the Tibu professional dashboard, registered at runtime.
+ * <p>
+ * {@link #validate(String, boolean)} enforces the constraints of {@link com.tibudget.api.CounterpartyProvider}
+ * lookups with a single hash lookup and no allocation when the key is valid. This class is thread-safe.
+ */
+public class CounterpartyMetadataRegistry {
+
+    private final Map<String, CounterpartyMetadataKey> customKeys = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a validated custom key.
+     *
+     * @param key the key definition
+     * @throws IllegalArgumentException if the key is blank, is a core key, or is already registered with another
+     *                                  definition
+     */
+    public void register(CounterpartyMetadataKey key) {
+        if (key == null || key.getKey() == null || key.getKey().trim().isEmpty()) {
+            throw new IllegalArgumentException("Metadata key is mandatory");
+        }
+        if (CounterpartyMetadataCoreKeys.fromKey(key.getKey()) != null) {
+            throw new IllegalArgumentException("Metadata key " + key.getKey() + " is a core key");
+        }
+        CounterpartyMetadataKey previous = customKeys.putIfAbsent(key.getKey(), key);
+        if (previous != null && (previous.isNumeric() != key.isNumeric() || previous.isUnique() != key.isUnique())) {
+            throw new IllegalArgumentException("Metadata key " + key.getKey() + " is already registered with another definition");
+        }
+    }
+
+    /**
+     * Registers a validated custom key.
+     *
+     * @param key         the metadata key
+     * @param description the functional description
+     * @param numeric     whether the value is numeric
+     * @param unique      whether the value is unique across all counterparties
+     * @return the registered definition
+     * @throws IllegalArgumentException if the key is blank, is a core key, or is already registered with another
+     *                                  definition
+     */
+    public CounterpartyMetadataKey register(String key, String description, boolean numeric, boolean unique) {
+        CounterpartyMetadataKey definition = new CustomKey(key, description, numeric, unique);
+        register(definition);
+        return customKeys.get(key);
+    }
+
+    /**
+     * Returns the definition of a key.
+     *
+     * @param key the metadata key
+     * @return the core or custom definition, or {@code null} if the key is unknown
+     */
+    public CounterpartyMetadataKey get(String key) {
+        if (key == null) {
+            return null;
+        }
+        CounterpartyMetadataKey core = CounterpartyMetadataCoreKeys.fromKey(key);
+        return core != null ? core : customKeys.get(key);
+    }
+
+    /**
+     * @return the core keys followed by the registered custom keys
+     */
+    public Collection<CounterpartyMetadataKey> getAll() {
+        Collection<CounterpartyMetadataKey> all = new ArrayList<>(Arrays.asList(CounterpartyMetadataCoreKeys.values()));
+        all.addAll(customKeys.values());
+        return all;
+    }
+
+    /**
+     * Checks that a key can be used for a {@link com.tibudget.api.CounterpartyProvider} lookup.
+     *
+     * @param metadataKey the metadata key
+     * @param numeric     {@code true} for a lookup by numeric value
+     * @return the key definition
+     * @throws IllegalArgumentException if the key is null, blank, unknown, not unique, or of the other value type
+     */
+    public CounterpartyMetadataKey validate(String metadataKey, boolean numeric) {
+        CounterpartyMetadataKey key = get(metadataKey);
+        if (key == null) {
+            throw new IllegalArgumentException(metadataKey == null || metadataKey.trim().isEmpty()
+                    ? "Metadata key is mandatory"
+                    : "Metadata key " + metadataKey + " is unknown or not validated");
+        }
+        if (!key.isUnique()) {
+            throw new IllegalArgumentException("Metadata key " + metadataKey + " is not unique");
+        }
+        if (key.isNumeric() != numeric) {
+            throw new IllegalArgumentException("Metadata key " + metadataKey + (numeric ? " is not numeric" : " is numeric"));
+        }
+        return key;
+    }
+
+    private static final class CustomKey implements CounterpartyMetadataKey {
+
+        private final String key;
+        private final String description;
+        private final boolean numeric;
+        private final boolean unique;
+
+        private CustomKey(String key, String description, boolean numeric, boolean unique) {
+            this.key = key;
+            this.description = description;
+            this.numeric = numeric;
+            this.unique = unique;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public String getDescription() {
+            return description;
+        }
+
+        @Override
+        public boolean isNumeric() {
+            return numeric;
+        }
+
+        @Override
+        public boolean isUnique() {
+            return unique;
+        }
+
+        @Override
+        public String toString() {
+            return key;
+        }
+    }
+}
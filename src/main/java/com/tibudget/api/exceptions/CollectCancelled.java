@@ -0,0 +1,17 @@
+package com.tibudget.api.exceptions;
+
+/**
+ * Throw this exception when the collect has been cancelled
+ * by the host or its time budget is exhausted. Results
+ * collected so far are still read through the getters.
+ */
+public class CollectCancelled extends CollectError {
+
+	public CollectCancelled(String messageKey, Object... messageArguments) {
+		super(messageKey, messageArguments);
+	}
+
+	public CollectCancelled(String messageKey, Throwable cause, Object... messageArguments) {
+		super(messageKey, cause, messageArguments);
+	}
+}
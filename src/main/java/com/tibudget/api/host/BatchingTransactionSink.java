@@ -0,0 +1,84 @@
+package com.tibudget.api.host;
+
+import com.tibudget.api.TransactionSink;
+import com.tibudget.api.exceptions.CollectError;
+import com.tibudget.dto.TransactionDto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link TransactionSink} grouping pushed transactions into batches handed to a host consumer.
+ * <p>
+ * At most {@code batchSize} transactions are kept in memory: the batch is handed to the consumer, on the calling
+ * thread, as soon as it is full. A slow consumer therefore slows the collector down instead of letting
+ * transactions pile up.
+ */
+public class BatchingTransactionSink implements TransactionSink {
+
+    /**
+     * Processes a batch of transactions, for example by persisting it.
+     */
+    @FunctionalInterface
+    public interface BatchConsumer {
+
+        /**
+         * Processes a batch, the list is not reused after the call.
+         *
+         * @param transactions the transactions, in push order
+         * @throws CollectError if the batch cannot be processed
+         */
+        void accept(List<TransactionDto> transactions) throws CollectError;
+    }
+
+    private final int batchSize;
+
+    private final BatchConsumer consumer;
+
+    private List<TransactionDto> batch;
+
+    private long acceptedCount;
+
+    public BatchingTransactionSink(int batchSize, BatchConsumer consumer) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be greater than 0: " + batchSize);
+        }
+        if (consumer == null) {
+            throw new IllegalArgumentException("consumer is mandatory");
+        }
+        this.batchSize = batchSize;
+        this.consumer = consumer;
+        this.batch = new ArrayList<>(batchSize);
+    }
+
+    @Override
+    public synchronized void accept(TransactionDto transaction) throws CollectError {
+        if (transaction == null) {
+            return;
+        }
+        batch.add(transaction);
+        acceptedCount++;
+        if (batch.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws CollectError {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<TransactionDto> full = batch;
+        batch = new ArrayList<>(batchSize);
+        consumer.accept(full);
+    }
+
+    /**
+     * Returns the number of transactions pushed so far.
+     *
+     * @return the number of accepted transactions
+     */
+    public synchronized long getAcceptedCount() {
+        return acceptedCount;
+    }
+}
@@ -0,0 +1,148 @@
+package com.tibudget.api.host;
+
+import com.tibudget.api.*;
+import com.tibudget.api.internet.CancellableInternetProvider;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * Host-side {@link CancellationToken}, cancelled explicitly with {@link #cancel()} or when its deadline passes.
+ * <p>
+ * The {@code bind} methods return providers bound to this token, to be given to {@link CollectorPlugin#init}:
+ * network and PDF calls fail once cancelled, network requests being bounded by the deadline, and a pending
+ * {@link OTPProvider#getCode} returns {@code null} when the token is cancelled or the deadline is reached instead of
+ * waiting for the user.
+ */
+public class CancellationSource implements CancellationToken {
+
+    /** Single daemon thread interrupting OTP waits when their deadline is reached. */
+    private static final ScheduledThreadPoolExecutor DEADLINE_TIMER = createTimer();
+
+    private final long deadline;
+
+    private final Set<ScopedInterrupt> waiters = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean cancelled;
+
+    /**
+     * Creates a token without deadline.
+     */
+    public CancellationSource() {
+        this.deadline = Long.MAX_VALUE;
+    }
+
+    /**
+     * Creates a token cancelled after the given time budget.
+     *
+     * @param timeout the time budget of the collect
+     */
+    public CancellationSource(Duration timeout) {
+        long now = System.currentTimeMillis();
+        long millis = timeout.toMillis();
+        this.deadline = millis >= Long.MAX_VALUE - now ? Long.MAX_VALUE : now + millis;
+    }
+
+    /**
+     * Cancels the collect.
+     */
+    public void cancel() {
+        cancelled = true;
+        for (ScopedInterrupt waiter : waiters) {
+            waiter.interrupt();
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor createTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "tibudget-cancellation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled || System.currentTimeMillis() >= deadline;
+    }
+
+    @Override
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Binds an internet provider to this token.
+     *
+     * @param provider the provider to bind
+     * @return a provider failing once this token is cancelled
+     */
+    public InternetProvider bind(InternetProvider provider) {
+        return new CancellableInternetProvider(provider, this);
+    }
+
+    /**
+     * Binds a PDF provider to this token.
+     *
+     * @param provider the provider to bind
+     * @return a provider failing once this token is cancelled
+     */
+    public PDFToolsProvider bind(PDFToolsProvider provider) {
+        return new PDFToolsProvider() {
+            @Override
+            public String extractText(File pdf) throws IOException {
+                if (isCancelled()) {
+                    throw new InterruptedIOException("Collect cancelled, PDF extraction aborted: " + pdf);
+                }
+                return provider.extractText(pdf);
+            }
+        };
+    }
+
+    /**
+     * Binds an OTP provider to this token. The wait for the code runs on the calling thread, which is interrupted
+     * when the token is cancelled or its deadline is reached; the provider must therefore wait in an interruptible
+     * way, for example on a {@link java.util.concurrent.BlockingQueue}. The interrupt raised by this token is
+     * cleared before returning.
+     *
+     * @param provider the provider to bind
+     * @return a provider returning {@code null} once this token is cancelled
+     */
+    public OTPProvider bind(OTPProvider provider) {
+        return (channel, keyword, pattern, prompt) -> {
+            if (isCancelled()) {
+                return null;
+            }
+            ScopedInterrupt waiter = new ScopedInterrupt();
+            waiters.add(waiter);
+            ScheduledFuture<?> timer = deadline == Long.MAX_VALUE
+                    ? null
+                    : DEADLINE_TIMER.schedule(waiter::interrupt, getRemainingMillis(), TimeUnit.MILLISECONDS);
+            try {
+                if (cancelled) {
+                    // cancel() may have run before the waiter was registered
+                    waiter.interrupt();
+                }
+                String code = provider.getCode(channel, keyword, pattern, prompt);
+                return isCancelled() ? null : code;
+            } catch (RuntimeException e) {
+                if (isCancelled()) {
+                    return null;
+                }
+                throw e;
+            } finally {
+                waiters.remove(waiter);
+                if (timer != null) {
+                    timer.cancel(false);
+                }
+                waiter.finish();
+            }
+        };
+    }
+}
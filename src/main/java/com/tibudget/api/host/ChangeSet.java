@@ -0,0 +1,107 @@
+package com.tibudget.api.host;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Minimal description of what changed on an account or a recurring payment between two collects, computed by a
+ * {@link DeltaEngine}.
+ *
+ * @param <T> the item type
+ * @param <F> the field enumeration of the item type
+ */
+public final class ChangeSet<T, F extends Enum<F>> {
+
+    /**
+     * Kind of change.
+     */
+    public enum Kind {
+        /** The item was not known */
+        ADDED,
+        /** Some fields of the item changed */
+        MODIFIED,
+        /** The item has not been collected again */
+        REMOVED
+    }
+
+    private final Kind kind;
+
+    private final String uuid;
+
+    private final T item;
+
+    private final DtoFingerprint<F> fingerprint;
+
+    private final Set<F> changedFields;
+
+    private final Set<String> addedMetadata;
+
+    private final Set<String> removedMetadata;
+
+    private final Set<String> changedMetadata;
+
+    ChangeSet(Kind kind, String uuid, T item, DtoFingerprint<F> fingerprint, Set<F> changedFields,
+              Set<String> addedMetadata, Set<String> removedMetadata, Set<String> changedMetadata) {
+        this.kind = kind;
+        this.uuid = uuid;
+        this.item = item;
+        this.fingerprint = fingerprint;
+        this.changedFields = Collections.unmodifiableSet(changedFields);
+        this.addedMetadata = Collections.unmodifiableSet(addedMetadata);
+        this.removedMetadata = Collections.unmodifiableSet(removedMetadata);
+        this.changedMetadata = Collections.unmodifiableSet(changedMetadata);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    /**
+     * @return the collected item, {@code null} if {@link Kind#REMOVED}
+     */
+    public T getItem() {
+        return item;
+    }
+
+    /**
+     * @return the fingerprint to persist for the next diff, {@code null} if {@link Kind#REMOVED}
+     */
+    public DtoFingerprint<F> getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return the fields to write, every field if {@link Kind#ADDED}, none if {@link Kind#REMOVED}
+     */
+    public Set<F> getChangedFields() {
+        return changedFields;
+    }
+
+    public Set<String> getAddedMetadata() {
+        return addedMetadata;
+    }
+
+    public Set<String> getRemovedMetadata() {
+        return removedMetadata;
+    }
+
+    public Set<String> getChangedMetadata() {
+        return changedMetadata;
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeSet{" +
+                "kind=" + kind +
+                ", uuid='" + uuid + '\'' +
+                ", changedFields=" + changedFields +
+                ", addedMetadata=" + addedMetadata +
+                ", removedMetadata=" + removedMetadata +
+                ", changedMetadata=" + changedMetadata +
+                '}';
+    }
+}
@@ -0,0 +1,149 @@
+package com.tibudget.api.host;
+
+import com.tibudget.api.ProgressListener;
+
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link ProgressListener} forwarding at most one event per interval to the host listener.
+ * <p>
+ * Phase changes and the {@link ProgressListener.Phase#DONE} event are forwarded immediately. Within a phase, only
+ * the latest event of each interval is forwarded, a trailing event being scheduled on the given executor so the
+ * last progress is never lost. One scheduler can be shared by all the collects running on a host.
+ * <p>
+ * Events are numbered when they are selected for delivery, and the host listener is called under a delivery lock
+ * that drops any event older than the last delivered one: a trailing event can never be delivered after a newer
+ * phase change.
+ */
+public class CoalescingProgressListener implements ProgressListener {
+
+    private final ProgressListener delegate;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final long intervalMillis;
+
+    private Event lastDelivered;
+
+    private long lastDeliveryTime;
+
+    private Event pending;
+
+    private ScheduledFuture<?> scheduled;
+
+    /** Sequence number of the last event selected for delivery, guarded by the instance monitor. */
+    private long sequence;
+
+    /** Serializes the calls to the host listener. */
+    private final ReentrantLock deliveryLock = new ReentrantLock();
+
+    /** Sequence number of the last event passed to the host listener, guarded by {@code deliveryLock}. */
+    private long deliveredSequence;
+
+    /**
+     * Creates a coalescing listener.
+     *
+     * @param delegate  the host listener
+     * @param scheduler the scheduler delivering trailing events
+     * @param interval  the minimum time between two events of the same phase
+     */
+    public CoalescingProgressListener(ProgressListener delegate, ScheduledExecutorService scheduler, Duration interval) {
+        if (delegate == null || scheduler == null || interval == null) {
+            throw new IllegalArgumentException("delegate, scheduler and interval are mandatory");
+        }
+        this.delegate = delegate;
+        this.scheduler = scheduler;
+        this.intervalMillis = interval.toMillis();
+    }
+
+    @Override
+    public void onProgress(Event event) {
+        if (event == null) {
+            return;
+        }
+        Event toDeliver = null;
+        long toDeliverSequence = 0;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            boolean phaseChanged = lastDelivered == null || lastDelivered.phase != event.phase || event.phase == Phase.DONE;
+            if (phaseChanged || now - lastDeliveryTime >= intervalMillis) {
+                cancelScheduled();
+                pending = null;
+                lastDelivered = event;
+                lastDeliveryTime = now;
+                toDeliver = event;
+                toDeliverSequence = ++sequence;
+            } else {
+                pending = event;
+                if (scheduled == null) {
+                    scheduled = scheduler.schedule(this::deliverPending, lastDeliveryTime + intervalMillis - now, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+        deliver(toDeliver, toDeliverSequence);
+    }
+
+    /**
+     * Forwards the pending event, if any, without waiting for the end of the interval.
+     */
+    public void flush() {
+        Event toDeliver;
+        long toDeliverSequence;
+        synchronized (this) {
+            cancelScheduled();
+            toDeliver = takePending();
+            toDeliverSequence = sequence;
+        }
+        deliver(toDeliver, toDeliverSequence);
+    }
+
+    private void deliverPending() {
+        Event toDeliver;
+        long toDeliverSequence;
+        synchronized (this) {
+            scheduled = null;
+            toDeliver = takePending();
+            toDeliverSequence = sequence;
+        }
+        deliver(toDeliver, toDeliverSequence);
+    }
+
+    private void deliver(Event event, long eventSequence) {
+        if (event == null) {
+            return;
+        }
+        deliveryLock.lock();
+        try {
+            if (eventSequence > deliveredSequence) {
+                deliveredSequence = eventSequence;
+                delegate.onProgress(event);
+            }
+        } finally {
+            deliveryLock.unlock();
+        }
+    }
+
+    /** Must be called while holding the lock. */
+    private Event takePending() {
+        Event event = pending;
+        if (event != null) {
+            pending = null;
+            lastDelivered = event;
+            lastDeliveryTime = System.currentTimeMillis();
+            sequence++;
+        }
+        return event;
+    }
+
+    /** Must be called while holding the lock. */
+    private void cancelScheduled() {
+        if (scheduled != null) {
+            scheduled.cancel(false);
+            scheduled = null;
+        }
+    }
+}
@@ -0,0 +1,557 @@
+package com.tibudget.api.host;
+
+import com.tibudget.api.*;
+import com.tibudget.api.exceptions.CollectCancelled;
+import com.tibudget.api.exceptions.CollectError;
+import com.tibudget.api.exceptions.MessagesException;
+import com.tibudget.dto.AccountDto;
+import com.tibudget.dto.MessageDto;
+import com.tibudget.dto.RecurringPaymentDto;
+import com.tibudget.dto.TransactionDto;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reference host running the whole lifecycle of {@link CollectorPlugin} instances:
+ * {@code init} &rarr; {@code validate} &rarr; {@code collect} &rarr; getters.
+ * <p>
+ * Each run executes on its own thread. On Java 21 and later, runs use virtual threads by default, so thousands of
+ * collects blocked on the network or on {@link OTPProvider#getCode} do not hold platform threads; on older runtimes
+ * a cached pool of platform threads is used. The number of collects running at the same time on the node is bounded,
+ * further runs are queued and only handed to the executor once a slot is free, so a waiting run holds no thread.
+ * The accounts of a {@link ParallelCollectorPlugin} run on a separate executor owned by the runner, a bounded
+ * executor full of runs waiting for their accounts cannot deadlock.
+ * <p>
+ * Every run is scoped: its time budget is enforced through a {@link CancellationSource} bound to the providers, the
+ * accounts of a {@link ParallelCollectorPlugin} are collected as sub-tasks that are all joined before the run
+ * completes, and when the budget is exhausted the run thread is interrupted. The result always carries what the
+ * plugin had collected so far, failures of any kind, errors included, being reported in the result.
+ */
+public class CollectorRunner implements AutoCloseable {
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final ExecutorService executor;
+
+    private final ExecutorService accountExecutor;
+
+    private final ScheduledExecutorService watchdog;
+
+    private final Deque<Run> pending = new ArrayDeque<>();
+
+    private final int maxConcurrentCollects;
+
+    private int running;
+
+    /**
+     * Creates a runner using virtual threads when the runtime supports them.
+     *
+     * @param maxConcurrentCollects maximum number of collects running at the same time
+     */
+    public CollectorRunner(int maxConcurrentCollects) {
+        this(newDefaultExecutor(), maxConcurrentCollects);
+    }
+
+    /**
+     * Creates a runner using the given executor, which is shut down by {@link #close()}. The accounts of parallel
+     * collects run on an executor owned by the runner.
+     *
+     * @param executor              the executor running the collects
+     * @param maxConcurrentCollects maximum number of collects running at the same time
+     */
+    public CollectorRunner(ExecutorService executor, int maxConcurrentCollects) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor is mandatory");
+        }
+        if (maxConcurrentCollects < 1) {
+            throw new IllegalArgumentException("maxConcurrentCollects must be greater than 0: " + maxConcurrentCollects);
+        }
+        this.executor = executor;
+        this.maxConcurrentCollects = maxConcurrentCollects;
+        this.accountExecutor = newDefaultExecutor();
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tibudget-runner-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Indicates whether the runtime supports virtual threads (Java 21 and later).
+     *
+     * @return {@code true} if virtual threads are available
+     */
+    public static boolean isVirtualThreadsAvailable() {
+        return virtualThreadExecutorFactory() != null;
+    }
+
+    /**
+     * Returns the number of collects currently running.
+     *
+     * @return the number of running collects
+     */
+    public int getRunningCount() {
+        synchronized (pending) {
+            return running;
+        }
+    }
+
+    /**
+     * Returns the number of runs waiting for a free slot.
+     *
+     * @return the number of queued runs
+     */
+    public int getPendingCount() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * Schedules a run.
+     *
+     * @param job the plugin and everything needed to run it
+     * @return a future completed with the result of the run, never completed exceptionally by collect failures
+     */
+    public CompletableFuture<Result> submit(Job job) {
+        if (job == null || job.plugin == null) {
+            throw new IllegalArgumentException("job and job plugin are mandatory");
+        }
+        Run run = new Run(job);
+        synchronized (pending) {
+            if (running >= maxConcurrentCollects) {
+                pending.add(run);
+                return run.future;
+            }
+            running++;
+        }
+        execute(run);
+        return run.future;
+    }
+
+    /**
+     * Shuts the executors down, runs still waiting for a slot complete with a {@link CollectCancelled} failure.
+     */
+    @Override
+    public void close() {
+        List<Run> cancelled;
+        synchronized (pending) {
+            cancelled = new ArrayList<>(pending);
+            pending.clear();
+        }
+        executor.shutdownNow();
+        accountExecutor.shutdownNow();
+        watchdog.shutdownNow();
+        for (Run run : cancelled) {
+            run.cancel(null);
+        }
+    }
+
+    private void execute(Run run) {
+        try {
+            executor.execute(run);
+        } catch (RejectedExecutionException e) {
+            run.cancel(e);
+            next();
+        }
+    }
+
+    private void next() {
+        Run run;
+        synchronized (pending) {
+            run = pending.poll();
+            if (run == null) {
+                running--;
+                return;
+            }
+        }
+        execute(run);
+    }
+
+    private Result run(Job job) {
+        CollectorPlugin plugin = job.plugin;
+        CancellationSource cancellation = job.timeout == null ? new CancellationSource() : new CancellationSource(job.timeout);
+        ScopedInterrupt runThread = new ScopedInterrupt();
+        ScheduledFuture<?> timeout = job.timeout == null ? null : watchdog.schedule(() -> {
+            cancellation.cancel();
+            runThread.interrupt();
+        }, job.timeout.toMillis(), TimeUnit.MILLISECONDS);
+
+        List<MessageDto> messages = Collections.emptyList();
+        Exception failure = null;
+        try {
+            plugin.init(
+                    job.internetProvider == null ? null : leased(cancellation.bind(job.internetProvider), job.lease),
+                    job.counterpartyProvider,
+                    job.otpProvider == null ? null : cancellation.bind(job.otpProvider),
+                    job.pdfToolsProvider == null ? null : cancellation.bind(job.pdfToolsProvider),
+                    job.settings,
+                    job.previousAccounts,
+                    job.previousRecurringPayments);
+            plugin.setCancellationToken(cancellation);
+            if (job.transactionSink != null) {
+                plugin.setTransactionSink(job.transactionSink);
+            }
+            if (job.checkpointProvider != null) {
+                plugin.setCheckpointProvider(job.checkpointProvider);
+            }
+            if (job.progressListener != null) {
+                plugin.setProgressListener(job.progressListener);
+            }
+
+            messages = plugin.validate();
+            boolean valid = true;
+            for (MessageDto message : messages) {
+                if (message.getType() == MessageDto.MessageType.ERROR) {
+                    valid = false;
+                    break;
+                }
+            }
+            if (valid) {
+                if (plugin instanceof ParallelCollectorPlugin && job.maxParallelAccounts > 1) {
+                    ParallelCollect.collect((ParallelCollectorPlugin) plugin, accountExecutor, job.maxParallelAccounts);
+                } else {
+                    plugin.collect();
+                }
+            }
+        } catch (MessagesException e) {
+            failure = cancellation.isCancelled() && !(e instanceof CollectCancelled) ? new CollectCancelled("error.collect.cancelled", e) : e;
+        } catch (RuntimeException e) {
+            failure = cancellation.isCancelled() ? new CollectCancelled("error.collect.cancelled", e) : e;
+        } catch (Throwable t) {
+            // Errors such as NoClassDefFoundError thrown by the plugin fail this run only
+            failure = cancellation.isCancelled() ? new CollectCancelled("error.collect.cancelled", t) : new CollectError("error.collect.internal", t);
+        } finally {
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            // A watchdog already running interrupts the thread only before this point, and that interrupt is
+            // cleared so that it does not leak to the next run on this thread
+            runThread.finish();
+        }
+        return new Result(plugin, messages, failure);
+    }
+
+    private static InternetProvider leased(InternetProvider provider, PluginPool.Lease<?> lease) {
+        return lease == null ? provider : new LeaseInternetProvider(provider, lease);
+    }
+
+    private static ExecutorService newDefaultExecutor() {
+        Method factory = virtualThreadExecutorFactory();
+        if (factory != null) {
+            try {
+                return (ExecutorService) factory.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                // Fall back to platform threads
+            }
+        }
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "tibudget-runner-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static Method virtualThreadExecutorFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A submitted job, handed to the executor once it holds a slot.
+     */
+    private final class Run implements Runnable {
+
+        private final Job job;
+
+        private final CompletableFuture<Result> future = new CompletableFuture<>();
+
+        private Run(Job job) {
+            this.job = job;
+        }
+
+        @Override
+        public void run() {
+            try {
+                future.complete(CollectorRunner.this.run(job));
+            } catch (Throwable t) {
+                // Thrown outside of the plugin calls, for example while setting the run up
+                future.complete(new Result(job.plugin, Collections.emptyList(), new CollectError("error.collect.internal", t)));
+            } finally {
+                next();
+            }
+        }
+
+        private void cancel(Exception cause) {
+            future.complete(new Result(job.plugin, Collections.emptyList(), new CollectCancelled("error.collect.cancelled", cause)));
+        }
+    }
+
+    /**
+     * A plugin to run with its providers, previous state and limits.
+     */
+    public static class Job {
+        private final CollectorPlugin plugin;
+        private final PluginPool.Lease<?> lease;
+        private InternetProvider internetProvider;
+        private CounterpartyProvider counterpartyProvider;
+        private OTPProvider otpProvider;
+        private PDFToolsProvider pdfToolsProvider;
+        private Map<String, String> settings = Collections.emptyMap();
+        private List<AccountDto> previousAccounts = Collections.emptyList();
+        private List<RecurringPaymentDto> previousRecurringPayments = Collections.emptyList();
+        private TransactionSink transactionSink;
+        private CheckpointProvider checkpointProvider;
+        private ProgressListener progressListener;
+        private Duration timeout;
+        private int maxParallelAccounts = 1;
+
+        /**
+         * Creates a job with the providers given to {@link CollectorPlugin#init}.
+         *
+         * @param plugin               a new plugin instance
+         * @param internetProvider     the internet bridge
+         * @param counterpartyProvider the counterparty lookup
+         * @param otpProvider          the OTP provider
+         * @param pdfToolsProvider     the PDF tools
+         */
+        public Job(CollectorPlugin plugin, InternetProvider internetProvider, CounterpartyProvider counterpartyProvider,
+                   OTPProvider otpProvider, PDFToolsProvider pdfToolsProvider) {
+            this(plugin, null, internetProvider, counterpartyProvider, otpProvider, pdfToolsProvider);
+        }
+
+        /**
+         * Creates a job for a plugin borrowed from a {@link PluginPool}. The first request sent through the internet
+         * provider is reported to the lease, which feeds the cold and warm start statistics of the pool. The lease
+         * is not closed by the runner.
+         *
+         * @param lease                the lease holding the plugin instance
+         * @param internetProvider     the internet bridge
+         * @param counterpartyProvider the counterparty lookup
+         * @param otpProvider          the OTP provider
+         * @param pdfToolsProvider     the PDF tools
+         */
+        public Job(PluginPool.Lease<?> lease, InternetProvider internetProvider, CounterpartyProvider counterpartyProvider,
+                   OTPProvider otpProvider, PDFToolsProvider pdfToolsProvider) {
+            this(lease == null ? null : lease.get(), lease, internetProvider, counterpartyProvider, otpProvider, pdfToolsProvider);
+        }
+
+        private Job(CollectorPlugin plugin, PluginPool.Lease<?> lease, InternetProvider internetProvider,
+                    CounterpartyProvider counterpartyProvider, OTPProvider otpProvider, PDFToolsProvider pdfToolsProvider) {
+            this.plugin = plugin;
+            this.lease = lease;
+            this.internetProvider = internetProvider;
+            this.counterpartyProvider = counterpartyProvider;
+            this.otpProvider = otpProvider;
+            this.pdfToolsProvider = pdfToolsProvider;
+        }
+
+        public CollectorPlugin getPlugin() {
+            return plugin;
+        }
+
+        public void setSettings(Map<String, String> settings) {
+            this.settings = settings == null ? Collections.emptyMap() : settings;
+        }
+
+        public void setPreviousAccounts(List<AccountDto> previousAccounts) {
+            this.previousAccounts = previousAccounts == null ? Collections.emptyList() : previousAccounts;
+        }
+
+        public void setPreviousRecurringPayments(List<RecurringPaymentDto> previousRecurringPayments) {
+            this.previousRecurringPayments = previousRecurringPayments == null ? Collections.emptyList() : previousRecurringPayments;
+        }
+
+        public void setTransactionSink(TransactionSink transactionSink) {
+            this.transactionSink = transactionSink;
+        }
+
+        public void setCheckpointProvider(CheckpointProvider checkpointProvider) {
+            this.checkpointProvider = checkpointProvider;
+        }
+
+        public void setProgressListener(ProgressListener progressListener) {
+            this.progressListener = progressListener;
+        }
+
+        /**
+         * Sets the time budget of the run, {@code null} for no limit.
+         *
+         * @param timeout the time budget
+         */
+        public void setTimeout(Duration timeout) {
+            this.timeout = timeout;
+        }
+
+        /**
+         * Sets how many accounts of a {@link ParallelCollectorPlugin} may be collected at the same time.
+         *
+         * @param maxParallelAccounts the parallelism cap, {@code 1} for a sequential collect
+         */
+        public void setMaxParallelAccounts(int maxParallelAccounts) {
+            this.maxParallelAccounts = Math.max(1, maxParallelAccounts);
+        }
+    }
+
+    /**
+     * Reports the first request of the collector to its {@link PluginPool.Lease}.
+     */
+    private static final class LeaseInternetProvider implements InternetProvider {
+
+        private final InternetProvider delegate;
+
+        private final PluginPool.Lease<?> lease;
+
+        private LeaseInternetProvider(InternetProvider delegate, PluginPool.Lease<?> lease) {
+            this.delegate = delegate;
+            this.lease = lease;
+        }
+
+        @Override
+        public Response get(String url, Map<String, String> headers) throws IOException {
+            lease.firstRequest();
+            return delegate.get(url, headers);
+        }
+
+        @Override
+        public Response post(String url, String body, String contentType, Map<String, String> headers) throws IOException {
+            lease.firstRequest();
+            return delegate.post(url, body, contentType, headers);
+        }
+
+        @Override
+        public Response downloadFile(String url, Map<String, String> headers, String forceContentType) throws IOException {
+            lease.firstRequest();
+            return delegate.downloadFile(url, headers, forceContentType);
+        }
+
+        @Override
+        public StreamResponse getStream(String url, Map<String, String> headers) throws IOException {
+            lease.firstRequest();
+            return delegate.getStream(url, headers);
+        }
+
+        @Override
+        public StreamResponse postStream(String url, String body, String contentType, Map<String, String> headers) throws IOException {
+            lease.firstRequest();
+            return delegate.postStream(url, body, contentType, headers);
+        }
+
+        @Override
+        public Response head(String url, Map<String, String> headers) throws IOException {
+            lease.firstRequest();
+            return delegate.head(url, headers);
+        }
+
+        @Override
+        public InternetProvider withTimeout(Duration timeout) {
+            return new LeaseInternetProvider(delegate.withTimeout(timeout), lease);
+        }
+    }
+
+    /**
+     * Outcome of a run: the collected data, even partial, and the failure if any.
+     */
+    public static class Result {
+        private final List<MessageDto> validationMessages;
+        private final Exception failure;
+        private final List<AccountDto> accounts;
+        private final List<TransactionDto> transactions;
+        private final List<RecurringPaymentDto> recurringPayments;
+        private final Map<String, String> settings;
+        private final String configurationName;
+        private final String configurationIdHash;
+
+        private Result(CollectorPlugin plugin, List<MessageDto> validationMessages, Exception failure) {
+            this.validationMessages = validationMessages == null ? Collections.emptyList() : validationMessages;
+            this.failure = failure;
+            this.accounts = safe(plugin::getAccounts);
+            this.transactions = safe(plugin::getTransactions);
+            this.recurringPayments = safe(plugin::getRecurringPayments);
+            this.settings = safe(plugin::getSettings);
+            this.configurationName = safe(plugin::getConfigurationName);
+            this.configurationIdHash = safe(plugin::getConfigurationIdHash);
+        }
+
+        private static <T> T safe(Callable<T> getter) {
+            try {
+                return getter.call();
+            } catch (Throwable t) {
+                // A getter failing after an aborted collect must not hide the collected data of the others
+                return null;
+            }
+        }
+
+        /**
+         * Indicates whether validation and collect both succeeded.
+         *
+         * @return {@code true} on success
+         */
+        public boolean isSuccess() {
+            if (failure != null) {
+                return false;
+            }
+            for (MessageDto message : validationMessages) {
+                if (message.getType() == MessageDto.MessageType.ERROR) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Indicates whether the run has been stopped by its time budget or by an interruption.
+         *
+         * @return {@code true} if cancelled
+         */
+        public boolean isCancelled() {
+            return failure instanceof CollectCancelled;
+        }
+
+        public List<MessageDto> getValidationMessages() {
+            return validationMessages;
+        }
+
+        /**
+         * Returns the failure of the collect, a {@link MessagesException} for expected failures. Errors thrown by the
+         * plugin are wrapped in a {@link CollectError}.
+         *
+         * @return the failure, or {@code null}
+         */
+        public Exception getFailure() {
+            return failure;
+        }
+
+        public List<AccountDto> getAccounts() {
+            return accounts;
+        }
+
+        public List<TransactionDto> getTransactions() {
+            return transactions;
+        }
+
+        public List<RecurringPaymentDto> getRecurringPayments() {
+            return recurringPayments;
+        }
+
+        public Map<String, String> getSettings() {
+            return settings;
+        }
+
+        public String getConfigurationName() {
+            return configurationName;
+        }
+
+        public String getConfigurationIdHash() {
+            return configurationIdHash;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.tibudget.api.host;
+
+import com.tibudget.dto.AccountDto;
+import com.tibudget.dto.PaymentMethodDto;
+import com.tibudget.dto.RecurringPaymentDto;
+
+import java.util.*;
+
+/**
+ * Computes the changes between the items given to {@link com.tibudget.api.CollectorPlugin#init} and the items
+ * collected again, so that the host only writes what changed.
+ * <p>
+ * Each item is reduced to a {@link DtoFingerprint}: one 64 bits hash per field, plus one per metadata entry. Hashes
+ * only depend on names and values, never on enumeration ordinals, so that persisted fingerprints survive a new
+ * version of the enumerations. Items are matched by UUID; an unchanged item costs one comparison of its
+ * fingerprints. Labels are compared like any other field: when the collector preserved the label as required,
+ * {@code LABEL} is not part of the change set.
+ * Use {@link #accounts()} and {@link #recurringPayments()}. Instances are stateless and thread-safe.
+ *
+ * @param <T> the item type
+ * @param <F> the field enumeration of the item type
+ */
+public abstract class DeltaEngine<T, F extends Enum<F>> {
+
+    /**
+     * Fields of {@link AccountDto} tracked by {@link #accounts()}, metadata being tracked per key.
+     */
+    public enum AccountField {
+        ID, TYPE, LABEL, COUNTERPARTY, CURRENCY, TIME_ZONE, BALANCE, LAST_UPDATE, PAYMENT_METHODS
+    }
+
+    /**
+     * Fields of {@link RecurringPaymentDto} tracked by {@link #recurringPayments()}.
+     */
+    public enum RecurringPaymentField {
+        ID, ACCOUNT, LABEL, EXPECTED_AMOUNT, AMOUNT_VARIATION_RATIO, DATE_START, DATE_END, RECURRENCE, STATE, RESUME_DATE
+    }
+
+    private static final DeltaEngine<AccountDto, AccountField> ACCOUNTS = new DeltaEngine<AccountDto, AccountField>(AccountField.class) {
+        @Override
+        protected String uuidOf(AccountDto account) {
+            return account.getUuid();
+        }
+
+        @Override
+        protected long hash(AccountDto account, AccountField field) {
+            switch (field) {
+                case ID:
+                    return hash(account.getId());
+                case TYPE:
+                    return hash(account.getType());
+                case LABEL:
+                    return hash(account.getLabel());
+                case COUNTERPARTY:
+                    return hash(account.getCounterPartyUuid());
+                case CURRENCY:
+                    return hash(account.getCurrencyCode());
+                case TIME_ZONE:
+                    return hash(account.getTimeZoneId());
+                case BALANCE:
+                    return hash(account.getCurrentBalance());
+                case LAST_UPDATE:
+                    return hash(account.getLastUpdate());
+                default:
+                    long h = SEED;
+                    for (PaymentMethodDto paymentMethod : account.getPaymentMethods()) {
+                        h = mix(h ^ hash(paymentMethod.getType()) ^ mix(hash(paymentMethod.getReference())));
+                    }
+                    return h;
+            }
+        }
+
+        @Override
+        protected Map<String, String> metadataOf(AccountDto account) {
+            return account.getMetadatas();
+        }
+    };
+
+    private static final DeltaEngine<RecurringPaymentDto, RecurringPaymentField> RECURRING_PAYMENTS = new DeltaEngine<RecurringPaymentDto, RecurringPaymentField>(RecurringPaymentField.class) {
+        @Override
+        protected String uuidOf(RecurringPaymentDto payment) {
+            return payment.getUuid();
+        }
+
+        @Override
+        protected long hash(RecurringPaymentDto payment, RecurringPaymentField field) {
+            switch (field) {
+                case ID:
+                    return hash(payment.getId());
+                case ACCOUNT:
+                    return hash(payment.getAccountUuid());
+                case LABEL:
+                    return hash(payment.getLabel());
+                case EXPECTED_AMOUNT:
+                    return hash(payment.getExpectedAmount());
+                case AMOUNT_VARIATION_RATIO:
+                    return hash(payment.getAcceptableAmountVariationRatio());
+                case DATE_START:
+                    return hash(payment.getDateStart());
+                case DATE_END:
+                    return hash(payment.getDateEnd());
+                case RECURRENCE:
+                    return mix(payment.getRecurrenceInterval() ^ hash(payment.getRecurrenceUnit()));
+                case STATE:
+                    return hash(payment.getState());
+                default:
+                    return hash(payment.getResumeDate());
+            }
+        }
+    };
+
+    private static final long SEED = 0xcbf29ce484222325L;
+
+    private final Class<F> fieldType;
+
+    private final F[] fields;
+
+    protected DeltaEngine(Class<F> fieldType) {
+        this.fieldType = fieldType;
+        this.fields = fieldType.getEnumConstants();
+    }
+
+    /**
+     * @return the engine for accounts
+     */
+    public static DeltaEngine<AccountDto, AccountField> accounts() {
+        return ACCOUNTS;
+    }
+
+    /**
+     * @return the engine for recurring payments
+     */
+    public static DeltaEngine<RecurringPaymentDto, RecurringPaymentField> recurringPayments() {
+        return RECURRING_PAYMENTS;
+    }
+
+    protected abstract String uuidOf(T item);
+
+    protected abstract long hash(T item, F field);
+
+    /**
+     * @param item the item
+     * @return the metadata of the item, or {@code null} if the item type has none
+     */
+    protected Map<String, String> metadataOf(T item) {
+        return null;
+    }
+
+    /**
+     * Computes the fingerprint of an item.
+     *
+     * @param item the item
+     * @return the fingerprint
+     */
+    public DtoFingerprint<F> fingerprint(T item) {
+        Map<String, Long> hashes = new HashMap<>(fields.length * 2);
+        for (F field : fields) {
+            hashes.put(field.name(), hash(item, field));
+        }
+        Map<String, String> metadata = metadataOf(item);
+        Map<String, Long> metadataHashes;
+        if (metadata == null || metadata.isEmpty()) {
+            metadataHashes = Collections.emptyMap();
+        } else {
+            metadataHashes = new HashMap<>(metadata.size() * 2);
+            for (Map.Entry<String, String> entry : metadata.entrySet()) {
+                metadataHashes.put(entry.getKey(), hash(entry.getValue()));
+            }
+        }
+        return new DtoFingerprint<>(uuidOf(item), hashes, metadataHashes);
+    }
+
+    /**
+     * Diffs the collected items against the previous items.
+     *
+     * @param previous the items given to the collector
+     * @param current  the items returned by the collector
+     * @return the change sets of added, modified and removed items, unchanged items being omitted
+     */
+    public List<ChangeSet<T, F>> diff(Collection<T> previous, Collection<T> current) {
+        List<DtoFingerprint<F>> fingerprints = new ArrayList<>(previous.size());
+        for (T item : previous) {
+            fingerprints.add(fingerprint(item));
+        }
+        return diffFingerprints(fingerprints, current);
+    }
+
+    /**
+     * Diffs the collected items against the fingerprints persisted after the previous collect.
+     *
+     * @param previous the fingerprints of the previous items
+     * @param current  the items returned by the collector
+     * @return the change sets of added, modified and removed items, unchanged items being omitted
+     */
+    public List<ChangeSet<T, F>> diffFingerprints(Collection<DtoFingerprint<F>> previous, Collection<T> current) {
+        Map<String, DtoFingerprint<F>> remaining = new LinkedHashMap<>(previous.size() * 2);
+        for (DtoFingerprint<F> fingerprint : previous) {
+            remaining.put(fingerprint.getUuid(), fingerprint);
+        }
+        List<ChangeSet<T, F>> changes = new ArrayList<>();
+        for (T item : current) {
+            DtoFingerprint<F> now = fingerprint(item);
+            DtoFingerprint<F> before = remaining.remove(now.getUuid());
+            if (before == null) {
+                changes.add(new ChangeSet<>(ChangeSet.Kind.ADDED, now.getUuid(), item, now, EnumSet.allOf(fieldType),
+                        now.getMetadataHashes().keySet(), Collections.emptySet(), Collections.emptySet()));
+            } else if (!now.sameContent(before)) {
+                changes.add(modified(item, before, now));
+            }
+        }
+        for (DtoFingerprint<F> before : remaining.values()) {
+            changes.add(new ChangeSet<>(ChangeSet.Kind.REMOVED, before.getUuid(), null, null, EnumSet.noneOf(fieldType),
+                    Collections.emptySet(), before.getMetadataHashes().keySet(), Collections.emptySet()));
+        }
+        return changes;
+    }
+
+    private ChangeSet<T, F> modified(T item, DtoFingerprint<F> before, DtoFingerprint<F> now) {
+        Set<F> changedFields = EnumSet.noneOf(fieldType);
+        Map<String, Long> beforeHashes = before.fieldHashes();
+        Map<String, Long> nowHashes = now.fieldHashes();
+        for (F field : fields) {
+            if (!Objects.equals(beforeHashes.get(field.name()), nowHashes.get(field.name()))) {
+                changedFields.add(field);
+            }
+        }
+        Set<String> added = new HashSet<>();
+        Set<String> changed = new HashSet<>();
+        for (Map.Entry<String, Long> entry : now.getMetadataHashes().entrySet()) {
+            Long previousHash = before.getMetadataHashes().get(entry.getKey());
+            if (previousHash == null) {
+                added.add(entry.getKey());
+            } else if (!previousHash.equals(entry.getValue())) {
+                changed.add(entry.getKey());
+            }
+        }
+        Set<String> removed = new HashSet<>(before.getMetadataHashes().keySet());
+        removed.removeAll(now.getMetadataHashes().keySet());
+        return new ChangeSet<>(ChangeSet.Kind.MODIFIED, now.getUuid(), item, now, changedFields, added, removed, changed);
+    }
+
+    protected static long hash(String value) {
+        if (value == null) {
+            return 0;
+        }
+        long h = SEED;
+        for (int i = 0; i < value.length(); i++) {
+            h = (h ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    protected static long hash(Enum<?> value) {
+        return value == null ? 0 : hash(value.name());
+    }
+
+    protected static long hash(Date value) {
+        return value == null ? 0 : mix(value.getTime() ^ SEED);
+    }
+
+    protected static long hash(Double value) {
+        return value == null ? 0 : hash(value.doubleValue());
+    }
+
+    protected static long hash(double value) {
+        // +0.0 and -0.0 are the same balance
+        return mix(Double.doubleToLongBits(value == 0 ? 0 : value) ^ SEED);
+    }
+
+    protected static long mix(long h) {
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+}
@@ -0,0 +1,76 @@
+package com.tibudget.api.host;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Per-field hashes of an account or a recurring payment, computed by a {@link DeltaEngine}.
+ * <p>
+ * A fingerprint only holds hashes: the host can persist it next to the stored item and diff the next collect
+ * against it, without loading or comparing the previous item field by field. Field hashes are keyed by field name,
+ * so persisted fingerprints stay valid when fields are added to or reordered in the enumeration.
+ *
+ * @param <F> the field enumeration of the item type
+ */
+public final class DtoFingerprint<F extends Enum<F>> implements Serializable {
+
+    private static final long serialVersionUID = 2L;
+
+    private final String uuid;
+
+    private final Map<String, Long> fieldHashes;
+
+    private final Map<String, Long> metadataHashes;
+
+    private final long hash;
+
+    DtoFingerprint(String uuid, Map<String, Long> fieldHashes, Map<String, Long> metadataHashes) {
+        this.uuid = uuid;
+        this.fieldHashes = Collections.unmodifiableMap(fieldHashes);
+        this.metadataHashes = Collections.unmodifiableMap(metadataHashes);
+        this.hash = fieldHashes.hashCode() * 31L + metadataHashes.hashCode();
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    /**
+     * @param field the field
+     * @return the hash of the field value, {@code 0} if the field did not exist when the fingerprint was computed
+     */
+    public long getFieldHash(F field) {
+        Long fieldHash = fieldHashes.get(field.name());
+        return fieldHash == null ? 0 : fieldHash;
+    }
+
+    /**
+     * @return the hash of each metadata value by key, empty for items without metadata
+     */
+    public Map<String, Long> getMetadataHashes() {
+        return metadataHashes;
+    }
+
+    /**
+     * Tells whether the item has the same field values as another one, both fingerprinted by the same engine.
+     *
+     * @param other the other fingerprint
+     * @return {@code true} if no field changed
+     */
+    public boolean sameContent(DtoFingerprint<F> other) {
+        return hash == other.hash && fieldHashes.equals(other.fieldHashes) && metadataHashes.equals(other.metadataHashes);
+    }
+
+    Map<String, Long> fieldHashes() {
+        return fieldHashes;
+    }
+
+    @Override
+    public String toString() {
+        return "DtoFingerprint{" +
+                "uuid='" + uuid + '\'' +
+                ", hash=" + Long.toHexString(hash) +
+                '}';
+    }
+}
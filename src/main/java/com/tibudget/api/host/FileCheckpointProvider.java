@@ -0,0 +1,144 @@
+package com.tibudget.api.host;
+
+import com.tibudget.api.CheckpointProvider;
+import com.tibudget.api.exceptions.CollectError;
+import com.tibudget.dto.CheckpointDto;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link CheckpointProvider} keeping the checkpoints of one configuration in a local file.
+ * <p>
+ * Each save rewrites a temporary file which then atomically replaces the previous one, so a crash never leaves
+ * a partially written checkpoint. Call {@link #clear()} once the collect has succeeded.
+ */
+public class FileCheckpointProvider implements CheckpointProvider {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final Path file;
+
+    private final Map<String, CheckpointDto> checkpoints = new LinkedHashMap<>();
+
+    /**
+     * Opens the checkpoints of a configuration, loading those saved by a previous attempt.
+     *
+     * @param file the file holding the checkpoints, usually named after the configuration identifier
+     * @throws IOException if an existing file cannot be read
+     */
+    public FileCheckpointProvider(Path file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("file is mandatory");
+        }
+        this.file = file;
+        if (Files.isRegularFile(file)) {
+            load();
+        }
+    }
+
+    @Override
+    public synchronized void save(CheckpointDto checkpoint) throws CollectError {
+        if (checkpoint == null) {
+            return;
+        }
+        checkpoints.put(key(checkpoint.getAccountUuid()), copy(checkpoint));
+        try {
+            write();
+        } catch (IOException e) {
+            throw new CollectError("error.checkpoint.save", e, file);
+        }
+    }
+
+    @Override
+    public synchronized CheckpointDto get(String accountUuid) {
+        CheckpointDto checkpoint = checkpoints.get(key(accountUuid));
+        return checkpoint == null ? null : copy(checkpoint);
+    }
+
+    @Override
+    public synchronized List<CheckpointDto> getAll() {
+        List<CheckpointDto> result = new ArrayList<>(checkpoints.size());
+        for (CheckpointDto checkpoint : checkpoints.values()) {
+            result.add(copy(checkpoint));
+        }
+        return result;
+    }
+
+    /**
+     * Discards every checkpoint, to be called after a successful collect.
+     *
+     * @throws IOException if the file cannot be deleted
+     */
+    public synchronized void clear() throws IOException {
+        checkpoints.clear();
+        Files.deleteIfExists(file);
+    }
+
+    private void load() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported checkpoint file version " + version + ": " + file);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String accountUuid = readNullable(in);
+                String cursor = readNullable(in);
+                long date = in.readLong();
+                String lastTransactionId = readNullable(in);
+                long emittedCount = in.readLong();
+                CheckpointDto checkpoint = new CheckpointDto(accountUuid, cursor, date == Long.MIN_VALUE ? null : new Date(date), lastTransactionId, emittedCount);
+                checkpoints.put(key(accountUuid), checkpoint);
+            }
+        }
+    }
+
+    private void write() throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(checkpoints.size());
+            for (CheckpointDto checkpoint : checkpoints.values()) {
+                writeNullable(out, checkpoint.getAccountUuid());
+                writeNullable(out, checkpoint.getCursor());
+                out.writeLong(checkpoint.getLastTransactionDate() == null ? Long.MIN_VALUE : checkpoint.getLastTransactionDate().getTime());
+                writeNullable(out, checkpoint.getLastTransactionId());
+                out.writeLong(checkpoint.getEmittedCount());
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String key(String accountUuid) {
+        return accountUuid == null ? "" : accountUuid;
+    }
+
+    private static CheckpointDto copy(CheckpointDto checkpoint) {
+        Date date = checkpoint.getLastTransactionDate();
+        return new CheckpointDto(checkpoint.getAccountUuid(), checkpoint.getCursor(), date == null ? null : new Date(date.getTime()),
+                checkpoint.getLastTransactionId(), checkpoint.getEmittedCount());
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,164 @@
+package com.tibudget.api.host;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@link SyncStore} backed by a local append-only file.
+ * <p>
+ * Every save or removal appends a record, the last record of a configuration wins when loading. When the file holds
+ * more than twice as many records as live configurations, it is compacted into a new file atomically replacing
+ * the old one. A record truncated by a crash is ignored. Once closed, the store rejects any change.
+ */
+public class FileSyncStore implements SyncStore, Closeable {
+
+    private static final byte SAVE = 1;
+
+    private static final byte REMOVE = 2;
+
+    private final Path file;
+
+    private final Map<String, SyncState> live = new LinkedHashMap<>();
+
+    private DataOutputStream out;
+
+    private long recordCount;
+
+    private boolean closed;
+
+    /**
+     * Opens a store.
+     *
+     * @param file the file holding the schedule
+     * @throws IOException if the file cannot be read or opened for writing
+     */
+    public FileSyncStore(Path file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("file is mandatory");
+        }
+        this.file = file;
+        if (Files.isRegularFile(file)) {
+            replay();
+        }
+        compact();
+    }
+
+    @Override
+    public synchronized Collection<SyncState> loadAll() {
+        Collection<SyncState> result = new ArrayList<>(live.size());
+        for (SyncState state : live.values()) {
+            result.add(state.copy());
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void save(SyncState state) throws IOException {
+        ensureOpen();
+        live.put(state.getConfigurationIdHash(), state.copy());
+        out.writeByte(SAVE);
+        write(out, state);
+        out.flush();
+        recordCount++;
+        compactIfNeeded();
+    }
+
+    @Override
+    public synchronized void remove(String configurationIdHash) throws IOException {
+        ensureOpen();
+        if (live.remove(configurationIdHash) == null) {
+            return;
+        }
+        out.writeByte(REMOVE);
+        out.writeUTF(configurationIdHash);
+        out.flush();
+        recordCount++;
+        compactIfNeeded();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        closeOutput();
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Sync store is closed: " + file);
+        }
+    }
+
+    private void closeOutput() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    private void replay() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                int type = in.read();
+                if (type == -1) {
+                    break;
+                }
+                if (type == SAVE) {
+                    SyncState state = read(in);
+                    live.put(state.getConfigurationIdHash(), state);
+                } else if (type == REMOVE) {
+                    live.remove(in.readUTF());
+                } else {
+                    break;
+                }
+            }
+        } catch (EOFException e) {
+            // Last record has been truncated, everything before it is valid
+        }
+    }
+
+    private void compactIfNeeded() throws IOException {
+        if (recordCount > 2L * Math.max(16, live.size())) {
+            compact();
+        }
+    }
+
+    private void compact() throws IOException {
+        closeOutput();
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream compacted = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            for (SyncState state : live.values()) {
+                compacted.writeByte(SAVE);
+                write(compacted, state);
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        recordCount = live.size();
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.APPEND)));
+    }
+
+    private static void write(DataOutputStream out, SyncState state) throws IOException {
+        out.writeUTF(state.getConfigurationIdHash());
+        out.writeUTF(state.getDomain());
+        out.writeLong(state.getNextDue());
+        out.writeLong(state.getLastAttempt());
+        out.writeLong(state.getLastSuccess());
+        out.writeLong(state.getLastUserActivity());
+        out.writeInt(state.getConsecutiveUnavailable());
+        out.writeInt(state.getConsecutiveFailures());
+    }
+
+    private static SyncState read(DataInputStream in) throws IOException {
+        return new SyncState(in.readUTF(), in.readUTF(), in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readInt(), in.readInt());
+    }
+}
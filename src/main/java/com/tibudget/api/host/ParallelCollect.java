@@ -0,0 +1,133 @@
+package com.tibudget.api.host;
+
+import com.tibudget.api.ParallelCollectorPlugin;
+import com.tibudget.api.exceptions.*;
+import com.tibudget.dto.AccountDto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs the accounts of a {@link ParallelCollectorPlugin} concurrently.
+ * <p>
+ * After {@link ParallelCollectorPlugin#collectAccounts()}, a fixed number of workers take accounts from a shared
+ * queue, so no more than {@code min(plugin.getMaxParallelism(), hostParallelism)} accounts are collected at the
+ * same time. The first failure stops the workers from starting new accounts and is rethrown once running
+ * accounts are done, the other accounts keep the results they already produced. Interrupting the calling thread
+ * cancels the workers not started yet and interrupts the threads of the running ones, the collect then fails with
+ * a {@link CollectCancelled}.
+ */
+public final class ParallelCollect {
+
+    private ParallelCollect() {
+    }
+
+    /**
+     * Collects all the accounts of a plugin.
+     *
+     * @param plugin          the initialized plugin
+     * @param executor        the executor running the accounts, it must not be the one running the caller if it is
+     *                        bounded
+     * @param hostParallelism the maximum parallelism allowed by the host for this plugin
+     * @throws CollectError         if an error occurs during the collect process (e.g., parsing issues), a
+     *                              {@link CollectCancelled} if the calling thread is interrupted.
+     * @throws AccessDeny           if access is denied due to incorrect credentials.
+     * @throws TemporaryUnavailable if the target website is temporarily unavailable (e.g., maintenance mode).
+     * @throws ConnectionFailure    if the connection to the website fails due to network issues.
+     * @throws ParameterError       if one or more provided parameters are incorrect.
+     */
+    public static void collect(ParallelCollectorPlugin plugin, Executor executor, int hostParallelism)
+            throws CollectError, AccessDeny, TemporaryUnavailable, ConnectionFailure, ParameterError {
+        List<AccountDto> accounts = plugin.collectAccounts();
+        int parallelism = Math.max(1, Math.min(Math.min(plugin.getMaxParallelism(), hostParallelism), accounts.size()));
+        if (parallelism <= 1) {
+            for (AccountDto account : accounts) {
+                plugin.collectAccount(account);
+            }
+            return;
+        }
+
+        BlockingQueue<AccountDto> queue = new LinkedBlockingQueue<>(accounts);
+        AtomicBoolean failed = new AtomicBoolean();
+        Set<ScopedInterrupt> running = ConcurrentHashMap.newKeySet();
+        List<CompletableFuture<Void>> workers = new ArrayList<>(parallelism);
+        for (int i = 0; i < parallelism; i++) {
+            workers.add(CompletableFuture.runAsync(() -> {
+                ScopedInterrupt worker = new ScopedInterrupt();
+                running.add(worker);
+                try {
+                    AccountDto account;
+                    while (!failed.get() && (account = queue.poll()) != null) {
+                        try {
+                            plugin.collectAccount(account);
+                        } catch (MessagesException | RuntimeException e) {
+                            failed.set(true);
+                            throw new CompletionException(e);
+                        }
+                    }
+                } finally {
+                    worker.finish();
+                    running.remove(worker);
+                }
+            }, executor));
+        }
+
+        Throwable failure = null;
+        boolean interrupted = false;
+        for (CompletableFuture<Void> worker : workers) {
+            while (true) {
+                try {
+                    worker.get();
+                    break;
+                } catch (ExecutionException | CancellationException e) {
+                    if (failure == null) {
+                        failure = e.getCause() != null ? e.getCause() : e;
+                    }
+                    break;
+                } catch (InterruptedException e) {
+                    // Stop the accounts running on the other threads, then wait for them to give up so that the
+                    // plugin is no longer used once the run is reported
+                    if (!interrupted) {
+                        interrupted = true;
+                        failure = new CollectCancelled("error.collect.cancelled", e);
+                        failed.set(true);
+                        for (CompletableFuture<Void> other : workers) {
+                            other.cancel(false);
+                        }
+                        for (ScopedInterrupt other : running) {
+                            other.interrupt();
+                        }
+                    }
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            rethrow(failure);
+        }
+    }
+
+    private static void rethrow(Throwable failure) throws CollectError, AccessDeny, TemporaryUnavailable, ConnectionFailure, ParameterError {
+        if (failure instanceof CollectError) {
+            throw (CollectError) failure;
+        } else if (failure instanceof AccessDeny) {
+            throw (AccessDeny) failure;
+        } else if (failure instanceof TemporaryUnavailable) {
+            throw (TemporaryUnavailable) failure;
+        } else if (failure instanceof ConnectionFailure) {
+            throw (ConnectionFailure) failure;
+        } else if (failure instanceof ParameterError) {
+            throw (ParameterError) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        throw new CollectError("error.collect.account", failure);
+    }
+}
@@ -0,0 +1,244 @@
+package com.tibudget.api.host;
+
+import com.tibudget.api.CollectorPlugin;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Pool of warm {@link CollectorPlugin} instances, keyed by plugin class.
+ * <p>
+ * Creating a collector may be costly (class loading, {@link com.tibudget.api.Input} discovery, patterns and parsers
+ * setup). When a lease is closed, the instance is offered back to the pool if {@link CollectorPlugin#reset()}
+ * returns {@code true}, otherwise it is dropped and the next {@link #acquire(Class)} creates a new one.
+ * <p>
+ * The pool also measures the time between {@link #acquire(Class)} and the first request of the collector, reported
+ * by {@link Lease#firstRequest()}, separately for cold (new) and warm (reused) instances. This class is thread-safe.
+ */
+public class PluginPool {
+
+    /**
+     * Timing statistics of a plugin class.
+     */
+    public static final class Stats {
+
+        private final AtomicLong coldCount = new AtomicLong();
+        private final AtomicLong coldNanos = new AtomicLong();
+        private final AtomicLong warmCount = new AtomicLong();
+        private final AtomicLong warmNanos = new AtomicLong();
+        private final AtomicLong resetRefused = new AtomicLong();
+
+        private Stats() {
+        }
+
+        public long getColdCount() {
+            return coldCount.get();
+        }
+
+        public long getWarmCount() {
+            return warmCount.get();
+        }
+
+        /**
+         * @return the mean time to first request of new instances, in nanoseconds, 0 if none measured
+         */
+        public long getMeanColdNanos() {
+            long count = coldCount.get();
+            return count == 0 ? 0 : coldNanos.get() / count;
+        }
+
+        /**
+         * @return the mean time to first request of reused instances, in nanoseconds, 0 if none measured
+         */
+        public long getMeanWarmNanos() {
+            long count = warmCount.get();
+            return count == 0 ? 0 : warmNanos.get() / count;
+        }
+
+        /**
+         * @return how many instances have been dropped because {@link CollectorPlugin#reset()} returned {@code false}
+         */
+        public long getResetRefused() {
+            return resetRefused.get();
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "coldCount=" + getColdCount() +
+                    ", meanColdNanos=" + getMeanColdNanos() +
+                    ", warmCount=" + getWarmCount() +
+                    ", meanWarmNanos=" + getMeanWarmNanos() +
+                    ", resetRefused=" + getResetRefused() +
+                    '}';
+        }
+    }
+
+    /**
+     * A plugin instance borrowed from the pool, to be closed once the collect results have been read.
+     *
+     * @param <P> the plugin type
+     */
+    public final class Lease<P extends CollectorPlugin> implements AutoCloseable {
+
+        private final Class<P> pluginClass;
+        private final P plugin;
+        private final boolean warm;
+        private final long acquiredAt;
+        private boolean firstRequestRecorded;
+        private boolean closed;
+
+        private Lease(Class<P> pluginClass, P plugin, boolean warm, long acquiredAt) {
+            this.pluginClass = pluginClass;
+            this.plugin = plugin;
+            this.warm = warm;
+            this.acquiredAt = acquiredAt;
+        }
+
+        public P get() {
+            return plugin;
+        }
+
+        /**
+         * @return {@code true} if the instance has been reused, {@code false} if it has just been created
+         */
+        public boolean isWarm() {
+            return warm;
+        }
+
+        /**
+         * Records that the collector issued its first request, usually called by the host from its
+         * {@link com.tibudget.api.InternetProvider}, as {@link CollectorRunner} does for a job created from a lease.
+         * Only the first call of a lease is recorded.
+         */
+        public synchronized void firstRequest() {
+            if (firstRequestRecorded || closed) {
+                return;
+            }
+            firstRequestRecorded = true;
+            long elapsed = System.nanoTime() - acquiredAt;
+            Stats stats = getStats(pluginClass);
+            if (warm) {
+                stats.warmCount.incrementAndGet();
+                stats.warmNanos.addAndGet(elapsed);
+            } else {
+                stats.coldCount.incrementAndGet();
+                stats.coldNanos.addAndGet(elapsed);
+            }
+        }
+
+        /**
+         * Resets the instance and gives it back to the pool, or drops it if it cannot be reused.
+         */
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            release(pluginClass, plugin);
+        }
+    }
+
+    private final int maxIdlePerClass;
+
+    private final Map<Class<?>, Supplier<? extends CollectorPlugin>> factories = new HashMap<>();
+
+    private final Map<Class<?>, Deque<CollectorPlugin>> idle = new HashMap<>();
+
+    private final Map<Class<?>, Stats> stats = new HashMap<>();
+
+    /**
+     * Creates a pool.
+     *
+     * @param maxIdlePerClass maximum number of idle instances kept per plugin class
+     */
+    public PluginPool(int maxIdlePerClass) {
+        if (maxIdlePerClass < 0) {
+            throw new IllegalArgumentException("maxIdlePerClass must not be negative: " + maxIdlePerClass);
+        }
+        this.maxIdlePerClass = maxIdlePerClass;
+    }
+
+    /**
+     * Registers the factory creating instances of a plugin class.
+     *
+     * @param pluginClass the plugin class
+     * @param factory     creates a new, not initialized, instance
+     * @param <P>         the plugin type
+     */
+    public synchronized <P extends CollectorPlugin> void register(Class<P> pluginClass, Supplier<P> factory) {
+        if (pluginClass == null || factory == null) {
+            throw new IllegalArgumentException("pluginClass and factory are mandatory");
+        }
+        factories.put(pluginClass, factory);
+    }
+
+    /**
+     * Borrows an instance of a plugin class, reusing an idle one if any.
+     * The instance must then be initialized with {@link CollectorPlugin#init} as usual.
+     *
+     * @param pluginClass the plugin class, previously registered
+     * @param <P>         the plugin type
+     * @return the lease holding the instance
+     */
+    public <P extends CollectorPlugin> Lease<P> acquire(Class<P> pluginClass) {
+        long start = System.nanoTime();
+        Supplier<? extends CollectorPlugin> factory;
+        synchronized (this) {
+            factory = factories.get(pluginClass);
+            if (factory == null) {
+                throw new IllegalArgumentException("No factory registered for " + pluginClass.getName());
+            }
+            Deque<CollectorPlugin> instances = idle.get(pluginClass);
+            CollectorPlugin instance = instances == null ? null : instances.pollFirst();
+            if (instance != null) {
+                return new Lease<>(pluginClass, pluginClass.cast(instance), true, start);
+            }
+        }
+        // Create outside of the lock, a cold start must not delay other plugin classes
+        return new Lease<>(pluginClass, pluginClass.cast(factory.get()), false, start);
+    }
+
+    /**
+     * Returns the timing statistics of a plugin class.
+     *
+     * @param pluginClass the plugin class
+     * @return the statistics, updated live
+     */
+    public synchronized Stats getStats(Class<? extends CollectorPlugin> pluginClass) {
+        return stats.computeIfAbsent(pluginClass, c -> new Stats());
+    }
+
+    /**
+     * Drops every idle instance.
+     */
+    public synchronized void clear() {
+        idle.clear();
+    }
+
+    private void release(Class<?> pluginClass, CollectorPlugin plugin) {
+        boolean reusable;
+        try {
+            reusable = plugin.reset();
+        } catch (RuntimeException e) {
+            reusable = false;
+        }
+        synchronized (this) {
+            if (!reusable) {
+                stats.computeIfAbsent(pluginClass, c -> new Stats()).resetRefused.incrementAndGet();
+                return;
+            }
+            Deque<CollectorPlugin> instances = idle.computeIfAbsent(pluginClass, c -> new ArrayDeque<>());
+            if (instances.size() < maxIdlePerClass) {
+                instances.addFirst(plugin);
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.tibudget.api.host;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Interrupts a thread only while it runs a given piece of work. Interrupting it once the work is finished would
+ * leak the interrupt into whatever the thread does next, hence the state checked under the lock.
+ */
+final class ScopedInterrupt {
+
+    private final Thread thread;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private boolean finished;
+
+    private boolean interrupted;
+
+    /**
+     * Creates a scope for the current thread.
+     */
+    ScopedInterrupt() {
+        this.thread = Thread.currentThread();
+    }
+
+    /**
+     * Interrupts the thread, unless the work is already finished.
+     */
+    void interrupt() {
+        lock.lock();
+        try {
+            if (!finished) {
+                interrupted = true;
+                thread.interrupt();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ends the scope, later calls to {@link #interrupt()} do nothing. Must be called from the scoped thread, the
+     * interrupt raised by this scope is cleared.
+     */
+    void finish() {
+        boolean clear;
+        lock.lock();
+        try {
+            finished = true;
+            clear = interrupted;
+        } finally {
+            lock.unlock();
+        }
+        if (clear) {
+            Thread.interrupted();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.tibudget.api.host;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides when the next collect of a configuration is due, used by {@link SyncScheduler}.
+ * <p>
+ * The default policy collects active users more often, backs off exponentially while the provider answers
+ * {@link com.tibudget.api.exceptions.TemporaryUnavailable}, retries other failures sooner, and adds a random
+ * jitter to every delay so that configurations registered together drift apart.
+ */
+public interface SyncPolicy {
+
+    /**
+     * Outcome of a collect.
+     */
+    enum Outcome {
+        /** The collect succeeded */
+        SUCCESS,
+        /** The provider was temporarily unavailable */
+        TEMPORARY_UNAVAILABLE,
+        /** The collect failed for another reason */
+        FAILURE
+    }
+
+    /**
+     * Computes when the next collect is due after a collect ended.
+     *
+     * @param state   the state, already updated with the outcome
+     * @param outcome the outcome of the collect
+     * @param now     the current time in milliseconds since the epoch
+     * @return the next due time in milliseconds since the epoch
+     */
+    long nextDue(SyncState state, Outcome outcome, long now);
+
+    /**
+     * Computes when the first collect of a newly registered configuration is due.
+     *
+     * @param state the state of the configuration
+     * @param now   the current time in milliseconds since the epoch
+     * @return the due time in milliseconds since the epoch
+     */
+    long firstDue(SyncState state, long now);
+
+    /**
+     * Computes when the next collect is due after the user has been active.
+     *
+     * @param state the state, already updated with the activity
+     * @param now   the current time in milliseconds since the epoch
+     * @return the due time in milliseconds since the epoch, never later than the current due time
+     */
+    long onUserActivity(SyncState state, long now);
+
+    /**
+     * Creates the default policy.
+     *
+     * @param interval       delay between two collects of an inactive user
+     * @param activeInterval delay between two collects of a user active within the last {@code interval}
+     * @param unavailableBackoff first delay after a {@code TemporaryUnavailable}, doubled at each consecutive one
+     * @param maxBackoff     upper bound of the back-off delays
+     * @param jitterRatio    random variation applied to each delay, {@code 0.1} for &plusmn;10%
+     * @return the policy
+     */
+    static SyncPolicy standard(Duration interval, Duration activeInterval, Duration unavailableBackoff, Duration maxBackoff, double jitterRatio) {
+        long intervalMillis = interval.toMillis();
+        long activeMillis = activeInterval.toMillis();
+        long backoffMillis = unavailableBackoff.toMillis();
+        long maxBackoffMillis = maxBackoff.toMillis();
+        return new SyncPolicy() {
+            @Override
+            public long nextDue(SyncState state, Outcome outcome, long now) {
+                long delay;
+                switch (outcome) {
+                    case TEMPORARY_UNAVAILABLE:
+                        delay = Math.min(maxBackoffMillis, backoffMillis << Math.min(20, state.getConsecutiveUnavailable() - 1));
+                        break;
+                    case FAILURE:
+                        delay = Math.min(maxBackoffMillis, backoffMillis << Math.min(20, state.getConsecutiveFailures() - 1));
+                        break;
+                    default:
+                        delay = now - state.getLastUserActivity() < intervalMillis ? activeMillis : intervalMillis;
+                }
+                return now + jitter(delay);
+            }
+
+            @Override
+            public long firstDue(SyncState state, long now) {
+                // Spread new configurations over the active interval instead of collecting them all at once
+                return now + ThreadLocalRandom.current().nextLong(Math.max(1, activeMillis));
+            }
+
+            @Override
+            public long onUserActivity(SyncState state, long now) {
+                long soonest = state.getLastSuccess() + jitter(activeMillis);
+                return Math.min(state.getNextDue(), Math.max(now, soonest));
+            }
+
+            private long jitter(long delay) {
+                long range = (long) (delay * jitterRatio);
+                return range <= 0 ? delay : delay - range + ThreadLocalRandom.current().nextLong(2 * range + 1);
+            }
+        };
+    }
+}
@@ -0,0 +1,215 @@
+package com.tibudget.api.host;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * In-process scheduler deciding when each configuration must be collected.
+ * <p>
+ * Configurations are kept in a priority queue ordered by due time and persisted through a {@link SyncStore}.
+ * The delays come from a pluggable {@link SyncPolicy}, taking into account the last success, the
+ * {@link com.tibudget.api.exceptions.TemporaryUnavailable} history of the configuration and the activity of the user.
+ * The number of collects running at the same time for a provider domain is bounded, so that due configurations of a
+ * busy domain wait while other domains proceed.
+ * <p>
+ * Typical loop: {@link #pollDue(int)} returns the configurations to start, and {@link #complete(String, SyncPolicy.Outcome)}
+ * is called when each collect ends. This class is thread-safe.
+ */
+public class SyncScheduler {
+
+    private static final Comparator<SyncState> BY_DUE_TIME = Comparator.comparingLong(SyncState::getNextDue)
+            .thenComparing(SyncState::getConfigurationIdHash);
+
+    private final SyncStore store;
+
+    private final SyncPolicy policy;
+
+    private final int defaultDomainCapacity;
+
+    private final Map<String, Integer> domainCapacities = new HashMap<>();
+
+    private final Map<String, Integer> runningPerDomain = new HashMap<>();
+
+    private final Map<String, SyncState> states = new HashMap<>();
+
+    private final NavigableSet<SyncState> queue = new TreeSet<>(BY_DUE_TIME);
+
+    /** Running configurations and the domain each run was started under, whose slot must be released. */
+    private final Map<String, String> running = new HashMap<>();
+
+    /**
+     * Creates a scheduler and loads the saved schedule.
+     *
+     * @param store                 the store persisting the schedule
+     * @param policy                the policy computing due times
+     * @param defaultDomainCapacity maximum number of collects running at the same time per domain
+     * @throws IOException if the store cannot be read
+     */
+    public SyncScheduler(SyncStore store, SyncPolicy policy, int defaultDomainCapacity) throws IOException {
+        if (store == null || policy == null) {
+            throw new IllegalArgumentException("store and policy are mandatory");
+        }
+        if (defaultDomainCapacity < 1) {
+            throw new IllegalArgumentException("defaultDomainCapacity must be greater than 0: " + defaultDomainCapacity);
+        }
+        this.store = store;
+        this.policy = policy;
+        this.defaultDomainCapacity = defaultDomainCapacity;
+        for (SyncState state : store.loadAll()) {
+            states.put(state.getConfigurationIdHash(), state);
+            queue.add(state);
+        }
+    }
+
+    /**
+     * Sets the number of collects that may run at the same time against a domain.
+     *
+     * @param domain   the provider domain
+     * @param capacity the maximum number of running collects
+     */
+    public synchronized void setDomainCapacity(String domain, int capacity) {
+        domainCapacities.put(domain, Math.max(1, capacity));
+    }
+
+    /**
+     * Adds a configuration to the schedule, or updates its domain if already scheduled.
+     *
+     * @param configurationIdHash the configuration identifier
+     * @param domain              the provider domain
+     * @throws IOException if the schedule cannot be saved
+     */
+    public synchronized void register(String configurationIdHash, String domain) throws IOException {
+        SyncState state = states.get(configurationIdHash);
+        if (state == null) {
+            state = new SyncState(configurationIdHash, domain, 0, 0, 0, 0, 0, 0);
+            state.setNextDue(policy.firstDue(state, System.currentTimeMillis()));
+            states.put(configurationIdHash, state);
+            queue.add(state);
+        } else {
+            state.setDomain(domain);
+        }
+        store.save(state.copy());
+    }
+
+    /**
+     * Removes a configuration from the schedule.
+     *
+     * @param configurationIdHash the configuration identifier
+     * @throws IOException if the schedule cannot be saved
+     */
+    public synchronized void unregister(String configurationIdHash) throws IOException {
+        SyncState state = states.remove(configurationIdHash);
+        if (state != null) {
+            queue.remove(state);
+            store.remove(configurationIdHash);
+        }
+    }
+
+    /**
+     * Records that the user of a configuration is active, which brings its next collect closer.
+     *
+     * @param configurationIdHash the configuration identifier
+     * @throws IOException if the schedule cannot be saved
+     */
+    public synchronized void recordUserActivity(String configurationIdHash) throws IOException {
+        SyncState state = states.get(configurationIdHash);
+        if (state == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        boolean queued = queue.remove(state);
+        state.setLastUserActivity(now);
+        state.setNextDue(policy.onUserActivity(state, now));
+        if (queued) {
+            queue.add(state);
+        }
+        store.save(state.copy());
+    }
+
+    /**
+     * Returns the configurations to collect now and marks them as running.
+     * Due configurations whose domain is at capacity are left for a later call.
+     *
+     * @param max maximum number of configurations to return
+     * @return the configuration identifiers, most overdue first
+     */
+    public synchronized List<String> pollDue(int max) {
+        long now = System.currentTimeMillis();
+        List<String> due = new ArrayList<>();
+        Iterator<SyncState> it = queue.iterator();
+        while (due.size() < max && it.hasNext()) {
+            SyncState state = it.next();
+            if (state.getNextDue() > now) {
+                break;
+            }
+            int domainRunning = runningPerDomain.getOrDefault(state.getDomain(), 0);
+            if (domainRunning >= domainCapacities.getOrDefault(state.getDomain(), defaultDomainCapacity)) {
+                continue;
+            }
+            it.remove();
+            runningPerDomain.put(state.getDomain(), domainRunning + 1);
+            running.put(state.getConfigurationIdHash(), state.getDomain());
+            state.setLastAttempt(now);
+            due.add(state.getConfigurationIdHash());
+        }
+        return due;
+    }
+
+    /**
+     * Records the end of a collect started by {@link #pollDue(int)} and schedules the next one.
+     *
+     * @param configurationIdHash the configuration identifier
+     * @param outcome             the outcome of the collect
+     * @throws IOException if the schedule cannot be saved
+     */
+    public synchronized void complete(String configurationIdHash, SyncPolicy.Outcome outcome) throws IOException {
+        String runDomain = running.remove(configurationIdHash);
+        if (runDomain == null) {
+            return;
+        }
+        // Release the slot even if the configuration has been unregistered or moved to another domain meanwhile
+        runningPerDomain.merge(runDomain, -1, (a, b) -> a + b <= 0 ? null : a + b);
+        SyncState state = states.get(configurationIdHash);
+        if (state == null) {
+            return;
+        }
+        // Registered again while running: it is queued and must not be reordered in place
+        queue.remove(state);
+        long now = System.currentTimeMillis();
+        switch (outcome) {
+            case SUCCESS:
+                state.setLastSuccess(now);
+                state.setConsecutiveUnavailable(0);
+                state.setConsecutiveFailures(0);
+                break;
+            case TEMPORARY_UNAVAILABLE:
+                state.setConsecutiveUnavailable(state.getConsecutiveUnavailable() + 1);
+                break;
+            default:
+                state.setConsecutiveFailures(state.getConsecutiveFailures() + 1);
+        }
+        state.setNextDue(policy.nextDue(state, outcome, now));
+        queue.add(state);
+        store.save(state.copy());
+    }
+
+    /**
+     * Returns the time of the next due collect, useful to sleep until then.
+     *
+     * @return the due time in milliseconds since the epoch, or {@link Long#MAX_VALUE} if nothing is scheduled
+     */
+    public synchronized long getNextDueTime() {
+        return queue.isEmpty() ? Long.MAX_VALUE : queue.first().getNextDue();
+    }
+
+    /**
+     * Returns a copy of the state of a configuration.
+     *
+     * @param configurationIdHash the configuration identifier
+     * @return the state, or {@code null} if not scheduled
+     */
+    public synchronized SyncState getState(String configurationIdHash) {
+        SyncState state = states.get(configurationIdHash);
+        return state == null ? null : state.copy();
+    }
+}
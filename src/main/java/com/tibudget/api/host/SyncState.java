@@ -0,0 +1,135 @@
+package com.tibudget.api.host;
+
+import java.util.Objects;
+
+/**
+ * Scheduling state of one configuration, identified by {@link com.tibudget.api.CollectorPlugin#getConfigurationIdHash()}.
+ */
+public class SyncState {
+
+    private final String configurationIdHash;
+    private String domain;
+    private long nextDue;
+    private long lastAttempt;
+    private long lastSuccess;
+    private long lastUserActivity;
+    private int consecutiveUnavailable;
+    private int consecutiveFailures;
+
+    /**
+     * Creates a state.
+     *
+     * @param configurationIdHash    the configuration identifier
+     * @param domain                 the provider domain, used to bound the load per provider
+     * @param nextDue                when the next collect is due, in milliseconds since the epoch
+     * @param lastAttempt            last collect start, 0 if never
+     * @param lastSuccess            last successful collect end, 0 if never
+     * @param lastUserActivity       last time the user has been active, 0 if never
+     * @param consecutiveUnavailable number of collects in a row that ended with {@link com.tibudget.api.exceptions.TemporaryUnavailable}
+     * @param consecutiveFailures    number of collects in a row that ended with another failure
+     */
+    public SyncState(String configurationIdHash, String domain, long nextDue, long lastAttempt, long lastSuccess,
+                     long lastUserActivity, int consecutiveUnavailable, int consecutiveFailures) {
+        if (configurationIdHash == null) {
+            throw new IllegalArgumentException("configurationIdHash is mandatory");
+        }
+        this.configurationIdHash = configurationIdHash;
+        this.domain = domain == null ? "" : domain;
+        this.nextDue = nextDue;
+        this.lastAttempt = lastAttempt;
+        this.lastSuccess = lastSuccess;
+        this.lastUserActivity = lastUserActivity;
+        this.consecutiveUnavailable = consecutiveUnavailable;
+        this.consecutiveFailures = consecutiveFailures;
+    }
+
+    SyncState copy() {
+        return new SyncState(configurationIdHash, domain, nextDue, lastAttempt, lastSuccess, lastUserActivity, consecutiveUnavailable, consecutiveFailures);
+    }
+
+    public String getConfigurationIdHash() {
+        return configurationIdHash;
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    void setDomain(String domain) {
+        this.domain = domain == null ? "" : domain;
+    }
+
+    public long getNextDue() {
+        return nextDue;
+    }
+
+    void setNextDue(long nextDue) {
+        this.nextDue = nextDue;
+    }
+
+    public long getLastAttempt() {
+        return lastAttempt;
+    }
+
+    void setLastAttempt(long lastAttempt) {
+        this.lastAttempt = lastAttempt;
+    }
+
+    public long getLastSuccess() {
+        return lastSuccess;
+    }
+
+    void setLastSuccess(long lastSuccess) {
+        this.lastSuccess = lastSuccess;
+    }
+
+    public long getLastUserActivity() {
+        return lastUserActivity;
+    }
+
+    void setLastUserActivity(long lastUserActivity) {
+        this.lastUserActivity = lastUserActivity;
+    }
+
+    public int getConsecutiveUnavailable() {
+        return consecutiveUnavailable;
+    }
+
+    void setConsecutiveUnavailable(int consecutiveUnavailable) {
+        this.consecutiveUnavailable = consecutiveUnavailable;
+    }
+
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    void setConsecutiveFailures(int consecutiveFailures) {
+        this.consecutiveFailures = consecutiveFailures;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SyncState)) return false;
+        return configurationIdHash.equals(((SyncState) o).configurationIdHash);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(configurationIdHash);
+    }
+
+    @Override
+    public String toString() {
+        return "SyncState{" +
+                "configurationIdHash='" + configurationIdHash + '\'' +
+                ", domain='" + domain + '\'' +
+                ", nextDue=" + nextDue +
+                ", lastAttempt=" + lastAttempt +
+                ", lastSuccess=" + lastSuccess +
+                ", lastUserActivity=" + lastUserActivity +
+                ", consecutiveUnavailable=" + consecutiveUnavailable +
+                ", consecutiveFailures=" + consecutiveFailures +
+                '}';
+    }
+}
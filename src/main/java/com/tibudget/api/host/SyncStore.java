@@ -0,0 +1,34 @@
+package com.tibudget.api.host;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Persists the scheduling state of {@link SyncScheduler}, so that the schedule survives a restart.
+ */
+public interface SyncStore {
+
+    /**
+     * Loads every saved state.
+     *
+     * @return the saved states
+     * @throws IOException if the store cannot be read
+     */
+    Collection<SyncState> loadAll() throws IOException;
+
+    /**
+     * Saves the state of a configuration, replacing the previous one.
+     *
+     * @param state the state to save
+     * @throws IOException if the store cannot be written
+     */
+    void save(SyncState state) throws IOException;
+
+    /**
+     * Removes the state of a configuration.
+     *
+     * @param configurationIdHash the configuration identifier
+     * @throws IOException if the store cannot be written
+     */
+    void remove(String configurationIdHash) throws IOException;
+}
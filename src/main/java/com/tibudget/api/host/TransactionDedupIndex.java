@@ -0,0 +1,297 @@
+package com.tibudget.api.host;
+
+import com.tibudget.dto.TransactionDto;
+import com.tibudget.dto.TransactionDto.TransactionDtoState;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Index telling whether a collected transaction is new, an already known duplicate, or a state update of a known
+ * transaction, without comparing whole {@link TransactionDto} instances.
+ * <p>
+ * A transaction is identified by a 64 bits hash of {@code (accountUuid, id)}. Transactions without id fall back to a
+ * fingerprint of their account, dates, amount, currency and label, combined with the occurrence of that fingerprint
+ * within the current collect: two identical purchases on the same day are the first and the second occurrence, and
+ * are therefore both kept. The host calls {@link #startCollect()} before offering the transactions of a collect so
+ * that occurrences are counted again from the first one. A fingerprint cannot follow a transaction whose label or
+ * dates change when it goes from {@code PENDING} to {@code COMPLETED}: collectors should provide an id whenever the
+ * provider has one.
+ * <p>
+ * Keys and states are stored in an open addressing table of primitive {@code long} and {@code byte} arrays, about
+ * 9 to 18 bytes per transaction. Two different transactions sharing the same 64 bits hash would be taken for one
+ * another; the probability is negligible for the volumes of a user. The index can be saved to and loaded from a file.
+ * This class is not thread-safe.
+ */
+public class TransactionDedupIndex {
+
+    /**
+     * What to do with an offered transaction.
+     */
+    public enum Decision {
+        /** The transaction was not known, it has been added */
+        NEW,
+        /** The transaction is known with the same state, or with a state it cannot go back to */
+        DUPLICATE,
+        /** The transaction is known, its state changed to {@code COMPLETED} or {@code DELETED} */
+        UPDATED
+    }
+
+    private static final int FILE_MAGIC = 0x54444931; // "TDI1"
+
+    private static final byte EMPTY = 0;
+
+    private static final float MAX_LOAD = 0.6f;
+
+    /* Stored state codes, explicit so that reordering TransactionDtoState does not corrupt saved indexes */
+    private static final byte STATE_COMPLETED = 1;
+
+    private static final byte STATE_PENDING = 2;
+
+    private static final byte STATE_DELETED = 3;
+
+    /** Occurrences of each fingerprint of transactions without id offered since {@link #startCollect()}. */
+    private final Map<Long, Integer> occurrences = new HashMap<>();
+
+    private long[] keys;
+
+    private byte[] states;
+
+    private int size;
+
+    /**
+     * Creates an empty index.
+     *
+     * @param expectedSize number of transactions expected, to size the table
+     */
+    public TransactionDedupIndex(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / MAX_LOAD)) - 1) << 1;
+        this.keys = new long[capacity];
+        this.states = new byte[capacity];
+    }
+
+    /**
+     * Records a collected transaction and tells whether it must be stored, updated or ignored.
+     * <p>
+     * Allowed transitions are {@code PENDING} to {@code COMPLETED}, and any state to {@code DELETED}. A
+     * {@code COMPLETED} transaction offered again as {@code PENDING}, or a {@code DELETED} one offered again, is a
+     * stale copy and reported as {@link Decision#DUPLICATE}.
+     *
+     * @param transaction the transaction
+     * @return the decision
+     */
+    public Decision offer(TransactionDto transaction) {
+        long key = keyOf(transaction);
+        if (transaction.getId() == null) {
+            key = occurrenceKey(key, occurrences.merge(key, 1, Integer::sum) - 1);
+        }
+        byte state = encode(transaction.getState());
+        int slot = find(key);
+        if (states[slot] != EMPTY) {
+            byte known = states[slot];
+            if (known == state || known == STATE_DELETED || (known == STATE_COMPLETED && state == STATE_PENDING)) {
+                return Decision.DUPLICATE;
+            }
+            states[slot] = state;
+            return Decision.UPDATED;
+        }
+        insert(slot, key, state);
+        return Decision.NEW;
+    }
+
+    /**
+     * Starts counting the occurrences of transactions without id again, to be called before offering the
+     * transactions of a new collect.
+     */
+    public void startCollect() {
+        occurrences.clear();
+    }
+
+    /**
+     * Returns the known state of a transaction. For a transaction without id, the state of the first occurrence of
+     * its fingerprint is returned.
+     *
+     * @param transaction the transaction, only its identifying fields are read
+     * @return the known state, or {@code null} if the transaction is not in the index
+     */
+    public TransactionDtoState getState(TransactionDto transaction) {
+        long key = keyOf(transaction);
+        int slot = find(key);
+        return states[slot] != EMPTY ? decode(states[slot]) : null;
+    }
+
+    /**
+     * @return the number of transactions in the index
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Saves the index, atomically replacing the file.
+     *
+     * @param file the destination file
+     * @throws IOException if the file cannot be written
+     */
+    public void save(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(size);
+            for (int i = 0; i < keys.length; i++) {
+                if (states[i] != EMPTY) {
+                    out.writeLong(keys[i]);
+                    out.writeByte(states[i]);
+                }
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads an index saved with {@link #save(Path)}.
+     *
+     * @param file the file
+     * @return the index
+     * @throws IOException if the file cannot be read or is not an index
+     */
+    public static TransactionDedupIndex load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC) {
+                throw new IOException("Not a transaction index: " + file);
+            }
+            int count = in.readInt();
+            TransactionDedupIndex index = new TransactionDedupIndex(count);
+            for (int i = 0; i < count; i++) {
+                long key = in.readLong();
+                byte state = in.readByte();
+                if (state < STATE_COMPLETED || state > STATE_DELETED) {
+                    throw new IOException("Invalid transaction state " + state + " in " + file);
+                }
+                int slot = index.find(key);
+                if (index.states[slot] == EMPTY) {
+                    index.insert(slot, key, state);
+                }
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Returns the slot holding the key, or the empty slot where it would be inserted.
+     */
+    private int find(long key) {
+        int mask = keys.length - 1;
+        int slot = (int) (key ^ (key >>> 32)) & mask;
+        while (states[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void insert(int slot, long key, byte state) {
+        keys[slot] = key;
+        states[slot] = state;
+        if (++size > keys.length * MAX_LOAD) {
+            grow();
+        }
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        byte[] oldStates = states;
+        keys = new long[oldKeys.length << 1];
+        states = new byte[oldStates.length << 1];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldStates[i] != EMPTY) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                states[slot] = oldStates[i];
+            }
+        }
+    }
+
+    private static byte encode(TransactionDtoState state) {
+        if (state == null) {
+            // A transaction without state is considered completed, as is the TransactionDto default
+            return STATE_COMPLETED;
+        }
+        switch (state) {
+            case PENDING:
+                return STATE_PENDING;
+            case DELETED:
+                return STATE_DELETED;
+            default:
+                return STATE_COMPLETED;
+        }
+    }
+
+    private static TransactionDtoState decode(byte state) {
+        switch (state) {
+            case STATE_PENDING:
+                return TransactionDtoState.PENDING;
+            case STATE_DELETED:
+                return TransactionDtoState.DELETED;
+            default:
+                return TransactionDtoState.COMPLETED;
+        }
+    }
+
+    /**
+     * Key of the n-th occurrence of a fingerprint, the first occurrence keeping the fingerprint itself.
+     */
+    private static long occurrenceKey(long fingerprint, int occurrence) {
+        return occurrence == 0 ? fingerprint : mix(fingerprint ^ (occurrence * 0x9e3779b97f4a7c15L));
+    }
+
+    /**
+     * Computes the identifying hash of a transaction: {@code (accountUuid, id)}, or a fingerprint of its stable
+     * fields if it has no id.
+     *
+     * @param transaction the transaction
+     * @return the hash
+     */
+    static long keyOf(TransactionDto transaction) {
+        long h = hash(0xcbf29ce484222325L, transaction.getAccountUuid());
+        if (transaction.getId() != null) {
+            return mix(hash(h, transaction.getId()));
+        }
+        // Distinct seed so that a fingerprint never equals an id based key by construction
+        h = mix(h ^ 0x9e3779b97f4a7c15L);
+        h = mix(h ^ time(transaction.getDateTransaction()));
+        h = mix(h ^ time(transaction.getDateValue()));
+        h = mix(h ^ Double.doubleToLongBits(transaction.getAmount()));
+        h = hash(h, transaction.getCurrencyCode());
+        return mix(hash(h, transaction.getLabel()));
+    }
+
+    private static long time(Date date) {
+        return date == null ? 0 : date.getTime();
+    }
+
+    /**
+     * FNV-1a over the characters, with a terminator so that {@code ("ab", "c")} and {@code ("a", "bc")} differ.
+     */
+    private static long hash(long h, String value) {
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                h = (h ^ value.charAt(i)) * 0x100000001b3L;
+            }
+        }
+        return (h ^ 0xffff) * 0x100000001b3L;
+    }
+
+    /**
+     * Finalizer of SplitMix64, spreading the bits before the table uses the lowest ones.
+     */
+    private static long mix(long h) {
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+}
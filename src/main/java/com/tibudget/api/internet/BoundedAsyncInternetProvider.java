@@ -0,0 +1,169 @@
+package com.tibudget.api.internet;
+
+import com.tibudget.api.AsyncInternetProvider;
+import com.tibudget.api.InternetProvider;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link AsyncInternetProvider} running the calls of a blocking {@link InternetProvider} on an executor.
+ * <p>
+ * At most {@code maxConcurrency} calls are running at the same time, others wait in a FIFO queue
+ * without holding any thread. Hosts having a native non-blocking HTTP client should rather implement
+ * {@link AsyncInternetProvider} directly, or give a virtual thread executor to this class.
+ */
+public class BoundedAsyncInternetProvider implements AsyncInternetProvider {
+
+    /** Concurrency limit used when none is given. */
+    public static final int DEFAULT_MAX_CONCURRENCY = 4;
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    /** Shared pool used when no executor is given, threads are daemon so they never prevent the JVM from exiting. */
+    private static final ExecutorService DEFAULT_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "tibudget-internet-" + THREAD_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final InternetProvider delegate;
+
+    private final Executor executor;
+
+    private final int maxConcurrency;
+
+    private final Queue<Call> pending = new ArrayDeque<>();
+
+    private int running;
+
+    /**
+     * Creates an asynchronous provider using the shared executor and {@link #DEFAULT_MAX_CONCURRENCY}.
+     *
+     * @param delegate the blocking provider executing the requests
+     */
+    public BoundedAsyncInternetProvider(InternetProvider delegate) {
+        this(delegate, DEFAULT_EXECUTOR, DEFAULT_MAX_CONCURRENCY);
+    }
+
+    /**
+     * Creates an asynchronous provider.
+     *
+     * @param delegate       the blocking provider executing the requests
+     * @param executor       the executor running the blocking calls
+     * @param maxConcurrency maximum number of calls running at the same time
+     */
+    public BoundedAsyncInternetProvider(InternetProvider delegate, Executor executor, int maxConcurrency) {
+        if (delegate == null || executor == null) {
+            throw new IllegalArgumentException("delegate and executor are mandatory");
+        }
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be greater than 0: " + maxConcurrency);
+        }
+        this.delegate = delegate;
+        this.executor = executor;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    @Override
+    public CompletableFuture<InternetProvider.Response> get(String url, Map<String, String> headers) {
+        return submit(() -> delegate.get(url, headers));
+    }
+
+    @Override
+    public CompletableFuture<InternetProvider.Response> post(String url, String body, String contentType, Map<String, String> headers) {
+        return submit(() -> delegate.post(url, body, contentType, headers));
+    }
+
+    @Override
+    public CompletableFuture<InternetProvider.Response> downloadFile(String url, Map<String, String> headers, String forceContentType) {
+        return submit(() -> delegate.downloadFile(url, headers, forceContentType));
+    }
+
+    @Override
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Returns the number of calls waiting for a free slot.
+     *
+     * @return the number of queued calls
+     */
+    public int getPendingCount() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    private CompletableFuture<InternetProvider.Response> submit(Request request) {
+        Call call = new Call(request);
+        synchronized (pending) {
+            if (running >= maxConcurrency) {
+                pending.add(call);
+                return call.future;
+            }
+            running++;
+        }
+        execute(call);
+        return call.future;
+    }
+
+    private void execute(Call call) {
+        try {
+            executor.execute(call);
+        } catch (RejectedExecutionException e) {
+            call.future.completeExceptionally(e);
+            next();
+        }
+    }
+
+    private void next() {
+        Call call;
+        synchronized (pending) {
+            call = pending.poll();
+            if (call == null) {
+                running--;
+                return;
+            }
+        }
+        execute(call);
+    }
+
+    @FunctionalInterface
+    private interface Request {
+        InternetProvider.Response execute() throws IOException;
+    }
+
+    private final class Call implements Runnable {
+
+        private final Request request;
+
+        private final CompletableFuture<InternetProvider.Response> future = new CompletableFuture<>();
+
+        private Call(Request request) {
+            this.request = request;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (!future.isDone()) {
+                    future.complete(request.execute());
+                }
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                next();
+            }
+        }
+    }
+}
@@ -0,0 +1,506 @@
+package com.tibudget.api.internet;
+
+import com.tibudget.api.HttpHeaders;
+import com.tibudget.api.InternetProvider;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * {@link InternetProvider} decorator caching GET responses on disk and revalidating them with conditional requests.
+ * <p>
+ * When a response carries an {@code ETag} or a {@code Last-Modified} header, it is stored on disk. The next GET on
+ * the same URL sends {@code If-None-Match} / {@code If-Modified-Since} and, if the server answers
+ * {@code 304 Not Modified}, the stored response is returned instead, its headers updated with those of the
+ * {@code 304} and stored again so that a new {@code ETag}, {@code Last-Modified} or expiry is used by the next
+ * revalidation. Responses marked {@code Cache-Control: no-store}
+ * or {@code Vary: *} are never stored, and requests already carrying conditional headers are passed through untouched.
+ * <p>
+ * Entries are keyed by the URL and the credentials of the request ({@code Authorization} and {@code Cookie} headers),
+ * so a response is never returned to another session. The request headers named by the {@code Vary} header of a
+ * stored response must also match for it to be reused. Only digests of the credentials are written on disk.
+ * <p>
+ * Entries are scoped per configuration: each instance works in a sub-directory derived from the configuration
+ * identifier (see {@link com.tibudget.api.CollectorPlugin#getConfigurationIdHash()}), so two configurations never
+ * share cached content. The cache is bounded in number of entries and in bytes, the least recently used entries
+ * are evicted first.
+ * <p>
+ * POST requests, file downloads and streams are not cached.
+ */
+public class CachingInternetProvider implements InternetProvider {
+
+    private static final String ENTRY_SUFFIX = ".entry";
+
+    private static final int FORMAT_VERSION = 1;
+
+    /** Request headers identifying the session, always part of the key of an entry. */
+    private static final String[] CREDENTIAL_HEADERS = {"Authorization", "Cookie"};
+
+    /** Headers of a {@code 304} describing its own transfer rather than the stored body, never copied to the entry. */
+    private static final String[] TRANSFER_HEADERS = {"Content-Length", "Content-Encoding", "Transfer-Encoding"};
+
+    private final InternetProvider delegate;
+
+    private final Path directory;
+
+    private final long maxBytes;
+
+    private final int maxEntries;
+
+    /** Index of stored entries by key, in access order so the eldest entry is the least recently used. */
+    private final LinkedHashMap<String, Entry> entries;
+
+    /** Guarded by {@link #entries}, atomic only so that the copies made by {@link #withTimeout} share it. */
+    private final AtomicLong totalBytes;
+
+    /**
+     * Creates a caching provider.
+     *
+     * @param delegate         the provider executing the requests
+     * @param cacheDirectory   root directory shared by all configurations
+     * @param configurationId  identifier of the configuration owning the cached entries
+     * @param maxBytes         maximum size of the cache for this configuration, in bytes
+     * @param maxEntries       maximum number of cached responses for this configuration
+     * @throws IOException if the cache directory cannot be created or read
+     */
+    public CachingInternetProvider(InternetProvider delegate, Path cacheDirectory, String configurationId, long maxBytes, int maxEntries) throws IOException {
+        if (delegate == null || cacheDirectory == null || configurationId == null) {
+            throw new IllegalArgumentException("delegate, cacheDirectory and configurationId are mandatory");
+        }
+        if (maxBytes < 1 || maxEntries < 1) {
+            throw new IllegalArgumentException("maxBytes and maxEntries must be greater than 0");
+        }
+        this.delegate = delegate;
+        this.directory = cacheDirectory.resolve(sha256(configurationId));
+        this.maxBytes = maxBytes;
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.totalBytes = new AtomicLong();
+        Files.createDirectories(directory);
+        loadIndex();
+    }
+
+    /**
+     * Creates a view of a cache sending its requests through another provider.
+     */
+    private CachingInternetProvider(CachingInternetProvider cache, InternetProvider delegate) {
+        this.delegate = delegate;
+        this.directory = cache.directory;
+        this.maxBytes = cache.maxBytes;
+        this.maxEntries = cache.maxEntries;
+        this.entries = cache.entries;
+        this.totalBytes = cache.totalBytes;
+    }
+
+    @Override
+    public Response get(String url, Map<String, String> headers) throws IOException {
+        HttpHeaders requestHeaders = HttpHeaders.of(headers);
+        if (requestHeaders.contains("If-None-Match") || requestHeaders.contains("If-Modified-Since")) {
+            return delegate.get(url, headers);
+        }
+        String key = key(url, requestHeaders);
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry == null || !entry.varyDigest.equals(varyDigest(entry.vary, requestHeaders))) {
+            return store(key, requestHeaders, delegate.get(url, headers));
+        }
+
+        Map<String, String> conditionalHeaders = headers == null ? new HashMap<>() : new HashMap<>(headers);
+        if (entry.etag != null) {
+            conditionalHeaders.put("If-None-Match", entry.etag);
+        }
+        if (entry.lastModified != null) {
+            conditionalHeaders.put("If-Modified-Since", entry.lastModified);
+        }
+        Response response = delegate.get(url, conditionalHeaders);
+        if (response.code == 304) {
+            Response cached = read(entry);
+            if (cached != null) {
+                return store(key, requestHeaders, refresh(cached, response));
+            }
+            // Entry lost or corrupted, fetch it again without conditions
+            remove(key);
+            response = delegate.get(url, headers);
+        }
+        return store(key, requestHeaders, response);
+    }
+
+    @Override
+    public Response post(String url, String body, String contentType, Map<String, String> headers) throws IOException {
+        return delegate.post(url, body, contentType, headers);
+    }
+
+    @Override
+    public Response downloadFile(String url, Map<String, String> headers, String forceContentType) throws IOException {
+        return delegate.downloadFile(url, headers, forceContentType);
+    }
+
+    @Override
+    public StreamResponse getStream(String url, Map<String, String> headers) throws IOException {
+        return delegate.getStream(url, headers);
+    }
+
+    @Override
+    public StreamResponse postStream(String url, String body, String contentType, Map<String, String> headers) throws IOException {
+        return delegate.postStream(url, body, contentType, headers);
+    }
+
+    /**
+     * Returns a view of this cache, sharing its entries, whose requests are bounded by the given timeout.
+     */
+    @Override
+    public InternetProvider withTimeout(Duration timeout) {
+        return new CachingInternetProvider(this, delegate.withTimeout(timeout));
+    }
+
+    /**
+     * Returns the number of cached responses.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Returns the disk space used by the cached responses.
+     *
+     * @return the size in bytes
+     */
+    public long getTotalBytes() {
+        synchronized (entries) {
+            return totalBytes.get();
+        }
+    }
+
+    /**
+     * Removes every cached response of this configuration.
+     *
+     * @throws IOException if an entry cannot be deleted
+     */
+    public void clear() throws IOException {
+        synchronized (entries) {
+            for (Entry entry : entries.values()) {
+                Files.deleteIfExists(entry.file);
+            }
+            entries.clear();
+            totalBytes.set(0);
+        }
+    }
+
+    private Response store(String key, HttpHeaders requestHeaders, Response response) {
+        if (response.code != 200) {
+            return response;
+        }
+        String etag = response.getHeader("ETag");
+        String lastModified = response.getHeader("Last-Modified");
+        String cacheControl = response.getHeader("Cache-Control");
+        if ((etag == null && lastModified == null) || (cacheControl != null && cacheControl.toLowerCase(Locale.ROOT).contains("no-store"))) {
+            return response;
+        }
+        List<String> vary = varyNames(response.getHeaders());
+        if (vary == null) {
+            return response;
+        }
+        String varyDigest = varyDigest(vary, requestHeaders);
+        Path file = directory.resolve(key + ENTRY_SUFFIX);
+        Path tmp = null;
+        try {
+            // Concurrent stores of the same key each write their own file, the last move wins
+            tmp = Files.createTempFile(directory, key, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(key);
+                writeNullable(out, etag);
+                writeNullable(out, lastModified);
+                out.writeInt(vary.size());
+                for (String name : vary) {
+                    out.writeUTF(name);
+                }
+                out.writeUTF(varyDigest);
+                writeResponse(out, response);
+            }
+            long size = Files.size(tmp);
+            if (size > maxBytes) {
+                Files.deleteIfExists(tmp);
+                return response;
+            }
+            synchronized (entries) {
+                // Moved under the lock so that the index always describes the file on disk
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Entry previous = entries.put(key, new Entry(file, size, etag, lastModified, vary, varyDigest));
+                if (previous != null) {
+                    totalBytes.addAndGet(-previous.size);
+                }
+                totalBytes.addAndGet(size);
+                evict();
+            }
+        } catch (IOException e) {
+            // The cache is an optimization only, the response is still valid
+            try {
+                if (tmp != null) {
+                    Files.deleteIfExists(tmp);
+                }
+            } catch (IOException ignored) {
+                // Nothing more can be done
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Updates a stored response with the headers of the {@code 304} revalidating it.
+     */
+    private static Response refresh(Response cached, Response notModified) {
+        HttpHeaders headers = new HttpHeaders();
+        for (Map.Entry<String, String> header : cached.getHeaders()) {
+            headers.add(header.getKey(), header.getValue());
+        }
+        HttpHeaders updates = notModified.getHeaders();
+        for (String name : updates.names()) {
+            if (isTransferHeader(name)) {
+                continue;
+            }
+            headers.remove(name);
+            for (String value : updates.getAll(name)) {
+                headers.add(name, value);
+            }
+        }
+        return Response.ofBytes(cached.code, cached.message, cached.method, cached.location, cached.protocol,
+                cached.getBodyBytes(), headers);
+    }
+
+    private static boolean isTransferHeader(String name) {
+        for (String transferHeader : TRANSFER_HEADERS) {
+            if (transferHeader.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Response read(Entry entry) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry.file)))) {
+            readEntry(in, entry.file);
+            Response response = readResponse(in);
+            Files.setLastModifiedTime(entry.file, FileTime.fromMillis(System.currentTimeMillis()));
+            return response;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void remove(String key) throws IOException {
+        synchronized (entries) {
+            Entry entry = entries.remove(key);
+            if (entry != null) {
+                totalBytes.addAndGet(-entry.size);
+                Files.deleteIfExists(entry.file);
+            }
+        }
+    }
+
+    /** Must be called while holding the lock on {@link #entries}. */
+    private void evict() throws IOException {
+        Iterator<Entry> it = entries.values().iterator();
+        while ((totalBytes.get() > maxBytes || entries.size() > maxEntries) && it.hasNext()) {
+            Entry eldest = it.next();
+            it.remove();
+            totalBytes.addAndGet(-eldest.size);
+            Files.deleteIfExists(eldest.file);
+        }
+    }
+
+    private void loadIndex() throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = new ArrayList<>();
+            list.filter(p -> p.getFileName().toString().endsWith(ENTRY_SUFFIX)).forEach(files::add);
+        }
+        // Oldest first so that access order matches the last use of each entry
+        Map<Path, FileTime> times = new HashMap<>();
+        for (Path file : files) {
+            times.put(file, Files.getLastModifiedTime(file));
+        }
+        files.sort(Comparator.comparing(times::get));
+        synchronized (entries) {
+            for (Path file : files) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                    Entry entry = readEntry(in, file);
+                    String name = file.getFileName().toString();
+                    entries.put(name.substring(0, name.length() - ENTRY_SUFFIX.length()), entry);
+                    totalBytes.addAndGet(entry.size);
+                } catch (IOException e) {
+                    // Corrupted entry or written by another format version
+                    Files.deleteIfExists(file);
+                }
+            }
+            evict();
+        }
+    }
+
+    private static Entry readEntry(DataInputStream in, Path file) throws IOException {
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported cache entry version " + version + ": " + file);
+        }
+        String key = in.readUTF();
+        if (!file.getFileName().toString().equals(key + ENTRY_SUFFIX)) {
+            throw new IOException("Cache entry does not match its file name: " + file);
+        }
+        String etag = readNullable(in);
+        String lastModified = readNullable(in);
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Invalid cache entry: " + file);
+        }
+        List<String> vary = new ArrayList<>(Math.min(count, 16));
+        for (int i = 0; i < count; i++) {
+            vary.add(in.readUTF());
+        }
+        String varyDigest = in.readUTF();
+        return new Entry(file, Files.size(file), etag, lastModified, vary, varyDigest);
+    }
+
+    private static void writeResponse(DataOutputStream out, Response response) throws IOException {
+        out.writeInt(response.code);
+        writeNullable(out, response.message);
+        writeNullable(out, response.method);
+        writeNullable(out, response.location);
+        writeNullable(out, response.protocol);
+        HttpHeaders headers = response.getHeaders();
+        out.writeInt(headers.size());
+        for (Map.Entry<String, String> header : headers) {
+            out.writeUTF(header.getKey());
+            out.writeUTF(header.getValue());
+        }
+        byte[] body = response.getBodyBytes();
+        out.writeInt(body == null ? -1 : body.length);
+        if (body != null) {
+            out.write(body);
+        }
+    }
+
+    private static Response readResponse(DataInputStream in) throws IOException {
+        int code = in.readInt();
+        String message = readNullable(in);
+        String method = readNullable(in);
+        String location = readNullable(in);
+        String protocol = readNullable(in);
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Invalid header count: " + count);
+        }
+        HttpHeaders headers = new HttpHeaders();
+        for (int i = 0; i < count; i++) {
+            headers.add(in.readUTF(), in.readUTF());
+        }
+        int length = in.readInt();
+        if (length < -1) {
+            throw new IOException("Invalid body length: " + length);
+        }
+        byte[] body = null;
+        if (length >= 0) {
+            body = new byte[length];
+            in.readFully(body);
+        }
+        return Response.ofBytes(code, message, method, location, protocol, body, headers);
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * Derives the key of an entry from the URL and the credentials of the request.
+     */
+    private static String key(String url, HttpHeaders requestHeaders) {
+        StringBuilder key = new StringBuilder(url);
+        for (String name : CREDENTIAL_HEADERS) {
+            key.append('\n').append(name);
+            for (String value : requestHeaders.getAll(name)) {
+                key.append('\n').append(value);
+            }
+        }
+        return sha256(key.toString());
+    }
+
+    /**
+     * Returns the request header names listed by the {@code Vary} header of a response.
+     *
+     * @return the lower-cased names, or {@code null} if the response varies on {@code *} and must not be stored
+     */
+    private static List<String> varyNames(HttpHeaders responseHeaders) {
+        List<String> names = new ArrayList<>();
+        for (String value : responseHeaders.getAll("Vary")) {
+            for (String name : value.split(",")) {
+                String trimmed = name.trim().toLowerCase(Locale.ROOT);
+                if (trimmed.equals("*")) {
+                    return null;
+                }
+                if (!trimmed.isEmpty() && !names.contains(trimmed)) {
+                    names.add(trimmed);
+                }
+            }
+        }
+        return names;
+    }
+
+    private static String varyDigest(List<String> vary, HttpHeaders requestHeaders) {
+        StringBuilder values = new StringBuilder();
+        for (String name : vary) {
+            values.append(name).append(':').append(String.join(",", requestHeaders.getAll(name))).append('\n');
+        }
+        return sha256(values.toString());
+    }
+
+    private static String sha256(String value) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static final class Entry {
+        private final Path file;
+        private final long size;
+        private final String etag;
+        private final String lastModified;
+        private final List<String> vary;
+        private final String varyDigest;
+
+        private Entry(Path file, long size, String etag, String lastModified, List<String> vary, String varyDigest) {
+            this.file = file;
+            this.size = size;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.vary = vary;
+            this.varyDigest = varyDigest;
+        }
+    }
+}
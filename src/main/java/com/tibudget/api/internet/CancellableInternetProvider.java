@@ -0,0 +1,103 @@
+package com.tibudget.api.internet;
+
+import com.tibudget.api.CancellationToken;
+import com.tibudget.api.InternetProvider;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * {@link InternetProvider} decorator refusing new requests once a {@link CancellationToken} is cancelled.
+ * <p>
+ * The token is checked before each request and again when the response arrives. When the token has a deadline,
+ * each request is sent through {@link InternetProvider#withTimeout(Duration)} with the remaining time, so that a
+ * request still running at the deadline is aborted by the host; a request running when the token is cancelled
+ * explicitly fails as soon as it completes. Failures are reported as {@link InterruptedIOException}.
+ */
+public class CancellableInternetProvider implements InternetProvider {
+
+    private final InternetProvider delegate;
+
+    private final CancellationToken token;
+
+    /** Timeout asked through {@link #withTimeout(Duration)}, in milliseconds, {@link Long#MAX_VALUE} if none. */
+    private final long timeoutMillis;
+
+    public CancellableInternetProvider(InternetProvider delegate, CancellationToken token) {
+        this(delegate, token, Long.MAX_VALUE);
+    }
+
+    private CancellableInternetProvider(InternetProvider delegate, CancellationToken token, long timeoutMillis) {
+        if (delegate == null || token == null) {
+            throw new IllegalArgumentException("delegate and token are mandatory");
+        }
+        this.delegate = delegate;
+        this.token = token;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public Response get(String url, Map<String, String> headers) throws IOException {
+        return checked(url, delegate(url).get(url, headers));
+    }
+
+    @Override
+    public Response post(String url, String body, String contentType, Map<String, String> headers) throws IOException {
+        return checked(url, delegate(url).post(url, body, contentType, headers));
+    }
+
+    @Override
+    public Response downloadFile(String url, Map<String, String> headers, String forceContentType) throws IOException {
+        return checked(url, delegate(url).downloadFile(url, headers, forceContentType));
+    }
+
+    @Override
+    public StreamResponse getStream(String url, Map<String, String> headers) throws IOException {
+        return checked(url, delegate(url).getStream(url, headers));
+    }
+
+    @Override
+    public StreamResponse postStream(String url, String body, String contentType, Map<String, String> headers) throws IOException {
+        return checked(url, delegate(url).postStream(url, body, contentType, headers));
+    }
+
+    /**
+     * Returns a provider bound to the same token whose requests are bounded by the given timeout, or by the
+     * remaining time before the deadline if it is shorter.
+     */
+    @Override
+    public InternetProvider withTimeout(Duration timeout) {
+        return new CancellableInternetProvider(delegate, token, Math.min(timeoutMillis, timeout.toMillis()));
+    }
+
+    /**
+     * Returns the delegate bounded by the remaining time before the deadline and by the timeout of this provider,
+     * after checking the token.
+     */
+    private InternetProvider delegate(String url) throws InterruptedIOException {
+        check(url);
+        long bound = Math.min(token.getRemainingMillis(), timeoutMillis);
+        return bound == Long.MAX_VALUE ? delegate : delegate.withTimeout(Duration.ofMillis(Math.max(1, bound)));
+    }
+
+    private void check(String url) throws InterruptedIOException {
+        if (token.isCancelled()) {
+            throw new InterruptedIOException("Collect cancelled, request aborted: " + url);
+        }
+    }
+
+    private Response checked(String url, Response response) throws InterruptedIOException {
+        check(url);
+        return response;
+    }
+
+    private StreamResponse checked(String url, StreamResponse response) throws IOException {
+        if (token.isCancelled()) {
+            response.close();
+            check(url);
+        }
+        return response;
+    }
+}
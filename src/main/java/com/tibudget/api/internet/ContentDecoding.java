@@ -0,0 +1,289 @@
+package com.tibudget.api.internet;
+
+import com.tibudget.api.HttpHeaders;
+import com.tibudget.api.InternetProvider;
+
+import java.io.*;
+import java.lang.reflect.Constructor;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Host-side helper implementing the compression contract of {@link InternetProvider}.
+ * <p>
+ * {@code gzip} and {@code deflate} are always supported. {@code br} and {@code zstd} are supported when a pure-Java
+ * decoder is found on the classpath ({@code org.brotli.dec.BrotliInputStream} from the Brotli decoder,
+ * {@code io.airlift.compress.zstd.ZstdInputStream} from aircompressor), so that no native library is ever required.
+ * <p>
+ * Typical use: send {@link #acceptEncoding()} as {@code Accept-Encoding}, then wrap the raw body with
+ * {@link #decode(InputStream, String)}; decoding is done while the body is read.
+ */
+public final class ContentDecoding {
+
+    /** Default limit of {@link #decode(InternetProvider.Response)}: 64 MiB of decoded body. */
+    public static final long DEFAULT_MAX_DECODED_BYTES = 64L * 1024 * 1024;
+
+    private static final Map<String, Constructor<? extends InputStream>> OPTIONAL_DECODERS = new LinkedHashMap<>();
+
+    static {
+        registerOptional("br", "org.brotli.dec.BrotliInputStream");
+        registerOptional("zstd", "io.airlift.compress.zstd.ZstdInputStream");
+    }
+
+    private ContentDecoding() {
+    }
+
+    /**
+     * Returns the value of the {@code Accept-Encoding} header listing every supported encoding.
+     *
+     * @return for example {@code "gzip, deflate, br"}
+     */
+    public static String acceptEncoding() {
+        StringBuilder value = new StringBuilder("gzip, deflate");
+        for (String encoding : OPTIONAL_DECODERS.keySet()) {
+            value.append(", ").append(encoding);
+        }
+        return value.toString();
+    }
+
+    /**
+     * Indicates whether a content encoding can be decoded.
+     *
+     * @param encoding the encoding name, for example {@code gzip}
+     * @return {@code true} if supported
+     */
+    public static boolean isSupported(String encoding) {
+        String name = encoding.trim().toLowerCase(Locale.ROOT);
+        return name.isEmpty() || "identity".equals(name) || "gzip".equals(name) || "x-gzip".equals(name)
+                || "deflate".equals(name) || OPTIONAL_DECODERS.containsKey(name);
+    }
+
+    /**
+     * Wraps a raw body so that it is decompressed while being read.
+     *
+     * @param raw             the body as received from the network
+     * @param contentEncoding the {@code Content-Encoding} header, may be {@code null}
+     * @return the decoded stream, counting transferred and decoded bytes
+     * @throws IOException if an encoding is not supported or the body header is invalid
+     */
+    public static DecodedInputStream decode(InputStream raw, String contentEncoding) throws IOException {
+        CountingInputStream transferred = new CountingInputStream(raw);
+        InputStream decoded = transferred;
+        if (contentEncoding != null) {
+            // Encodings are listed in the order they have been applied, so they are removed from the last one
+            String[] encodings = contentEncoding.split(",");
+            for (int i = encodings.length - 1; i >= 0; i--) {
+                decoded = decoder(decoded, encodings[i].trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        return new DecodedInputStream(decoded, transferred);
+    }
+
+    /**
+     * Decodes a fully received response, for hosts that do not stream, refusing bodies decoding to more than
+     * {@link #DEFAULT_MAX_DECODED_BYTES}.
+     *
+     * @param response the response with a compressed body
+     * @return the response with a decoded body and its transfer sizes, or the same response if it is not compressed
+     * @throws IOException if the body cannot be decoded or is too large once decoded
+     * @see #decode(InternetProvider.Response, long)
+     */
+    public static InternetProvider.Response decode(InternetProvider.Response response) throws IOException {
+        return decode(response, DEFAULT_MAX_DECODED_BYTES);
+    }
+
+    /**
+     * Decodes a fully received response, for hosts that do not stream.
+     * The {@code Content-Encoding} and {@code Content-Length} headers are removed from the returned response.
+     * <p>
+     * The response must have been created from the raw bytes received. A response created from a text body is
+     * re-encoded with its charset, which gives back the compressed bytes only for single-byte charsets such as
+     * ISO-8859-1: with any other charset decoding fails, or worse returns garbage.
+     *
+     * @param response        the response with a compressed body
+     * @param maxDecodedBytes maximum size of the decoded body, protecting against decompression bombs
+     * @return the response with a decoded body and its transfer sizes, or the same response if it is not compressed
+     * @throws IOException if the body cannot be decoded or is larger than {@code maxDecodedBytes} once decoded
+     */
+    public static InternetProvider.Response decode(InternetProvider.Response response, long maxDecodedBytes) throws IOException {
+        if (maxDecodedBytes < 0) {
+            throw new IllegalArgumentException("maxDecodedBytes must not be negative: " + maxDecodedBytes);
+        }
+        String contentEncoding = response.getHeader("Content-Encoding");
+        byte[] raw = response.getBodyBytes();
+        if (contentEncoding == null || raw == null) {
+            return response;
+        }
+        byte[] body;
+        long transferredBytes;
+        try (DecodedInputStream in = decode(new ByteArrayInputStream(raw), contentEncoding)) {
+            // One byte more than allowed is enough to detect an oversized body without decoding all of it
+            body = in.readNBytes((int) Math.min(maxDecodedBytes, Integer.MAX_VALUE - 9) + 1);
+            if (body.length > maxDecodedBytes) {
+                throw new IOException("Decoded body exceeds " + maxDecodedBytes + " bytes: " + response.location);
+            }
+            transferredBytes = in.getTransferredBytes();
+        }
+        HttpHeaders headers = new HttpHeaders();
+        for (Map.Entry<String, String> header : response.getHeaders()) {
+            if (!"Content-Encoding".equalsIgnoreCase(header.getKey()) && !"Content-Length".equalsIgnoreCase(header.getKey())) {
+                headers.add(header.getKey(), header.getValue());
+            }
+        }
+        return InternetProvider.Response.ofBytes(response.code, response.message, response.method, response.location,
+                response.protocol, body, headers, transferredBytes, body.length);
+    }
+
+    private static InputStream decoder(InputStream in, String encoding) throws IOException {
+        switch (encoding) {
+            case "":
+            case "identity":
+                return in;
+            case "gzip":
+            case "x-gzip":
+                return new GZIPInputStream(in, 8192);
+            case "deflate":
+                return inflater(in);
+            default:
+                Constructor<? extends InputStream> constructor = OPTIONAL_DECODERS.get(encoding);
+                if (constructor == null) {
+                    throw new IOException("Unsupported content encoding: " + encoding);
+                }
+                try {
+                    return constructor.newInstance(in);
+                } catch (ReflectiveOperationException e) {
+                    throw new IOException("Cannot create " + encoding + " decoder", e);
+                }
+        }
+    }
+
+    /**
+     * HTTP {@code deflate} is supposed to be zlib-wrapped, but some servers send raw deflate data: the zlib header is checked.
+     */
+    private static InputStream inflater(InputStream in) throws IOException {
+        PushbackInputStream pushback = new PushbackInputStream(in, 2);
+        byte[] header = new byte[2];
+        int read = pushback.readNBytes(header, 0, 2);
+        pushback.unread(header, 0, read);
+        boolean zlib = read == 2 && (header[0] & 0x0F) == 8 && (((header[0] & 0xFF) << 8) | (header[1] & 0xFF)) % 31 == 0;
+        return new InflaterInputStream(pushback, new Inflater(!zlib), 8192);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void registerOptional(String encoding, String className) {
+        try {
+            Class<?> type = Class.forName(className, false, ContentDecoding.class.getClassLoader());
+            if (InputStream.class.isAssignableFrom(type)) {
+                OPTIONAL_DECODERS.put(encoding, ((Class<? extends InputStream>) type).getConstructor(InputStream.class));
+            }
+        } catch (ClassNotFoundException | NoSuchMethodException | LinkageError e) {
+            // Decoder not available, the encoding is not advertised
+        }
+    }
+
+    /**
+     * Decoded body reporting how many bytes have been transferred and decoded so far.
+     */
+    public static final class DecodedInputStream extends FilterInputStream {
+
+        private final CountingInputStream transferred;
+
+        private long decodedBytes;
+
+        private DecodedInputStream(InputStream decoded, CountingInputStream transferred) {
+            super(decoded);
+            this.transferred = transferred;
+        }
+
+        /**
+         * Returns the number of bytes read from the network so far.
+         *
+         * @return the transferred bytes
+         */
+        public long getTransferredBytes() {
+            return transferred.count;
+        }
+
+        /**
+         * Returns the number of decoded bytes read so far.
+         *
+         * @return the decoded bytes
+         */
+        public long getDecodedBytes() {
+            return decodedBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                decodedBytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                decodedBytes += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            decodedBytes += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
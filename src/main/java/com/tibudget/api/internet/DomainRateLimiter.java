@@ -0,0 +1,262 @@
+package com.tibudget.api.internet;
+
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Host-wide request throttling keyed by domain name.
+ * <p>
+ * Each domain has a token bucket limiting the request rate and an adaptive concurrency limit following an
+ * AIMD scheme: the limit grows slowly while the server answers normally and is halved when it answers
+ * {@code 429 Too Many Requests} or {@code 503 Service Unavailable}. A {@code Retry-After} header blocks
+ * the domain until the given date.
+ * <p>
+ * A single instance should be shared by all the configurations running on a host, so that fanning out many
+ * configurations against the same provider stays under its limits. Collectors use it through
+ * {@link RateLimitedInternetProvider}.
+ */
+public class DomainRateLimiter {
+
+    private final Limits defaultLimits;
+
+    private final Map<String, Limits> domainLimits = new ConcurrentHashMap<>();
+
+    private final Map<String, Domain> domains = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a limiter applying the same limits to every domain, unless configured otherwise with
+     * {@link #setLimits(String, double, int, int)}.
+     *
+     * @param permitsPerSecond sustained number of requests per second
+     * @param burst            number of requests that can be sent at once after an idle period
+     * @param maxConcurrency   upper bound of the adaptive concurrency limit
+     */
+    public DomainRateLimiter(double permitsPerSecond, int burst, int maxConcurrency) {
+        this.defaultLimits = new Limits(permitsPerSecond, burst, maxConcurrency);
+    }
+
+    /**
+     * Overrides the limits of a domain, typically from the configuration of the collector connecting to it.
+     * The limits are updated in place: requests already running keep their permit, and waiting requests are
+     * woken up to be checked against the new limits.
+     *
+     * @param domain           the domain name, for example {@code www.example.com}
+     * @param permitsPerSecond sustained number of requests per second
+     * @param burst            number of requests that can be sent at once after an idle period
+     * @param maxConcurrency   upper bound of the adaptive concurrency limit
+     */
+    public void setLimits(String domain, double permitsPerSecond, int burst, int maxConcurrency) {
+        String key = domain.toLowerCase(Locale.ROOT);
+        Limits limits = new Limits(permitsPerSecond, burst, maxConcurrency);
+        domainLimits.put(key, limits);
+        Domain existing = domains.get(key);
+        if (existing != null) {
+            existing.setLimits(limits);
+        }
+    }
+
+    /**
+     * Returns the current adaptive concurrency limit of a domain.
+     *
+     * @param domain the domain name
+     * @return the number of requests allowed at the same time
+     */
+    public int getConcurrencyLimit(String domain) {
+        return domain(domain).currentLimit();
+    }
+
+    /**
+     * Waits until a request to the given URL is allowed.
+     * Every successful call must be followed by a call to {@link #release(String, int, String)}.
+     *
+     * @param url the requested URL
+     * @return the domain the permit has been acquired for
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    public String acquire(String url) throws InterruptedIOException {
+        String domain = domainOf(url);
+        domain(domain).acquire();
+        return domain;
+    }
+
+    /**
+     * Releases a permit and adapts the concurrency limit of the domain to the response.
+     *
+     * @param domain     the domain returned by {@link #acquire(String)}
+     * @param code       the HTTP status code, or {@code -1} if no response has been received
+     * @param retryAfter the {@code Retry-After} header, if any
+     */
+    public void release(String domain, int code, String retryAfter) {
+        domain(domain).release(code, parseRetryAfter(retryAfter));
+    }
+
+    private Domain domain(String domain) {
+        String key = domain.toLowerCase(Locale.ROOT);
+        return domains.computeIfAbsent(key, k -> new Domain(domainLimits.getOrDefault(k, defaultLimits)));
+    }
+
+    private static String domainOf(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host == null ? "" : host.toLowerCase(Locale.ROOT);
+        } catch (IllegalArgumentException e) {
+            return "";
+        }
+    }
+
+    /**
+     * Parses a {@code Retry-After} value, either a number of seconds or an HTTP date.
+     *
+     * @return the time in milliseconds until which the domain must not be called, or 0
+     */
+    private static long parseRetryAfter(String retryAfter) {
+        if (retryAfter == null || retryAfter.trim().isEmpty()) {
+            return 0;
+        }
+        String value = retryAfter.trim();
+        try {
+            return System.currentTimeMillis() + Long.parseLong(value) * 1000;
+        } catch (NumberFormatException e) {
+            try {
+                return ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            } catch (DateTimeParseException ignored) {
+                return 0;
+            }
+        }
+    }
+
+    private static final class Limits {
+        private final double permitsPerSecond;
+        private final int burst;
+        private final int maxConcurrency;
+
+        private Limits(double permitsPerSecond, int burst, int maxConcurrency) {
+            if (permitsPerSecond <= 0 || burst < 1 || maxConcurrency < 1) {
+                throw new IllegalArgumentException("Limits must be greater than 0");
+            }
+            this.permitsPerSecond = permitsPerSecond;
+            this.burst = burst;
+            this.maxConcurrency = maxConcurrency;
+        }
+    }
+
+    /**
+     * Throttling state of one domain, all fields are guarded by {@code lock}.
+     * <p>
+     * A {@link ReentrantLock} is used rather than a monitor so that waiting virtual threads do not pin their carrier.
+     */
+    private static final class Domain {
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final Condition changed = lock.newCondition();
+
+        private Limits limits;
+
+        private double tokens;
+
+        private long lastRefill = System.nanoTime();
+
+        private double concurrencyLimit;
+
+        private int inFlight;
+
+        private long blockedUntil;
+
+        private Domain(Limits limits) {
+            this.limits = limits;
+            this.tokens = limits.burst;
+            this.concurrencyLimit = limits.maxConcurrency;
+        }
+
+        private int currentLimit() {
+            lock.lock();
+            try {
+                return (int) concurrencyLimit;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void setLimits(Limits newLimits) {
+            lock.lock();
+            try {
+                refill();
+                limits = newLimits;
+                tokens = Math.min(tokens, newLimits.burst);
+                concurrencyLimit = Math.min(concurrencyLimit, newLimits.maxConcurrency);
+                if (concurrencyLimit < 1) {
+                    concurrencyLimit = 1;
+                }
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void acquire() throws InterruptedIOException {
+            lock.lock();
+            try {
+                while (true) {
+                    long waitMillis = blockedUntil - System.currentTimeMillis();
+                    if (waitMillis > 0) {
+                        changed.await(waitMillis, TimeUnit.MILLISECONDS);
+                        continue;
+                    }
+                    if (inFlight >= (int) concurrencyLimit) {
+                        changed.await();
+                        continue;
+                    }
+                    refill();
+                    if (tokens < 1) {
+                        changed.await(Math.max(1, (long) Math.ceil((1 - tokens) * 1000 / limits.permitsPerSecond)), TimeUnit.MILLISECONDS);
+                        continue;
+                    }
+                    tokens--;
+                    inFlight++;
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the rate limiter");
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void release(int code, long retryAfter) {
+            lock.lock();
+            try {
+                if (inFlight > 0) {
+                    inFlight--;
+                }
+                if (code == 429 || code == 503) {
+                    // Multiplicative decrease
+                    concurrencyLimit = Math.max(1, concurrencyLimit / 2);
+                    blockedUntil = Math.max(blockedUntil, retryAfter);
+                } else if (code > 0 && code < 500) {
+                    // Additive increase, about one more request per round of the current limit
+                    concurrencyLimit = Math.min(limits.maxConcurrency, concurrencyLimit + 1 / concurrencyLimit);
+                }
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(limits.burst, tokens + (now - lastRefill) * limits.permitsPerSecond / 1_000_000_000d);
+            lastRefill = now;
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package com.tibudget.api.internet;
+
+import com.tibudget.api.HttpHeaders;
+import com.tibudget.api.InternetProvider;
+import com.tibudget.api.exceptions.ConnectionFailure;
+import com.tibudget.dto.FileDto;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Downloads large files with concurrent HTTP {@code Range} requests, and resumes interrupted downloads.
+ * <p>
+ * The file is split in chunks of {@code chunkSize} bytes fetched through {@link InternetProvider#getStream(String, Map)}
+ * and written in place with positional {@link FileChannel} writes. While downloading, data is stored in
+ * {@code <destination>.part} and the completed chunks are recorded in {@code <destination>.ranges}.
+ * If a chunk fails, a {@link ConnectionFailure} is thrown and calling {@link #download(String, Map, File)} again
+ * with the same destination only fetches the missing chunks, as long as the remote file has not changed
+ * (same size and same strong {@code ETag} or {@code Last-Modified}). That validator is sent as {@code If-Range} with
+ * every range request, and the {@code Content-Range} of each chunk must match the requested range. Without a
+ * validator, a download always starts over.
+ * <p>
+ * Files larger than {@link FileDto#MAX_SIZE_BYTES} are rejected from the announced size, before anything is written.
+ * Servers that do not support ranges are handled with a single sequential transfer.
+ */
+public class RangedDownloader {
+
+    /** Default size of each range request. */
+    public static final long DEFAULT_CHUNK_SIZE = 4L * 1024 * 1024;
+
+    /** Default number of range requests running at the same time. */
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes\\s+(\\d+)-(\\d+)/(\\d+|\\*)");
+
+    private final InternetProvider provider;
+
+    private final int parallelism;
+
+    private final long chunkSize;
+
+    public RangedDownloader(InternetProvider provider) {
+        this(provider, DEFAULT_PARALLELISM, DEFAULT_CHUNK_SIZE);
+    }
+
+    public RangedDownloader(InternetProvider provider, int parallelism, long chunkSize) {
+        if (provider == null) {
+            throw new IllegalArgumentException("provider is mandatory");
+        }
+        if (parallelism < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("parallelism and chunkSize must be greater than 0");
+        }
+        this.provider = provider;
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Downloads a file, resuming a previous partial download of the same destination if possible.
+     *
+     * @param url         The URL of the file to download.
+     * @param headers     Optional headers to include in every request.
+     * @param destination Where to store the file once complete.
+     * @return The response of the first request, with the destination path as body, like {@link InternetProvider#downloadFile(String, Map, String)}
+     * @throws ConnectionFailure if a transfer failed or has been truncated, the download can be resumed by calling this method again
+     * @throws IOException if the file is too large, the server answered with an error or with another range than the
+     *                     requested one, the remote file changed during the download or the file cannot be written
+     */
+    public InternetProvider.Response download(String url, Map<String, String> headers, File destination) throws ConnectionFailure, IOException {
+        Path target = destination.toPath();
+        Path part = target.resolveSibling(target.getFileName() + ".part");
+        Path ranges = target.resolveSibling(target.getFileName() + ".ranges");
+
+        InternetProvider.StreamResponse first;
+        try {
+            first = provider.getStream(url, withRange(headers, 0, chunkSize - 1));
+        } catch (IOException e) {
+            throw new ConnectionFailure("error.download.interrupted", e, url);
+        }
+        try (InternetProvider.StreamResponse response = first) {
+            if (response.code == 200) {
+                checkSize(response.getHeader("Content-Length"), url);
+                Files.deleteIfExists(ranges);
+                writeSequentially(response, part, url);
+            } else if (response.code == 206) {
+                long total = totalLength(response.getHeader("Content-Range"), url);
+                checkRange(response.getHeader("Content-Range"), 0, Math.min(chunkSize, total), total, url);
+                String validator = validator(response.getHeaders());
+                if (validator == null || !Files.exists(part)) {
+                    // Nothing to resume from, or no way to tell whether the remote file is still the same
+                    Files.deleteIfExists(ranges);
+                }
+                DownloadState state = DownloadState.load(ranges, total, chunkSize, validator == null ? "" : validator);
+                try (FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    if (!state.isDone(0)) {
+                        writeChunk(response, channel, 0, Math.min(chunkSize, total), url);
+                        state.markDone(0);
+                    }
+                    downloadRemaining(url, headers, validator, channel, state, total);
+                    channel.truncate(total);
+                }
+                Files.deleteIfExists(ranges);
+            } else {
+                throw new IOException("Unexpected HTTP status " + response.code + " while downloading " + url);
+            }
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+            return new InternetProvider.Response(200, response.message, response.method, response.location, response.protocol,
+                    target.toAbsolutePath().toString(), response.headers);
+        }
+    }
+
+    private void downloadRemaining(String url, Map<String, String> headers, String validator, FileChannel channel, DownloadState state, long total)
+            throws ConnectionFailure, IOException {
+        List<Integer> missing = new ArrayList<>();
+        for (int chunk = 0; chunk < state.chunkCount; chunk++) {
+            if (!state.isDone(chunk)) {
+                missing.add(chunk);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, missing.size()), runnable -> {
+            Thread thread = new Thread(runnable, "tibudget-download");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<Void>> futures = new ArrayList<>(missing.size());
+            for (int chunk : missing) {
+                futures.add(executor.submit(() -> {
+                    long start = chunk * chunkSize;
+                    long length = Math.min(chunkSize, total - start);
+                    InternetProvider.StreamResponse chunkResponse;
+                    try {
+                        chunkResponse = provider.getStream(url, withRange(withValidator(headers, validator), start, start + length - 1));
+                    } catch (IOException e) {
+                        throw new ConnectionFailure("error.download.interrupted", e, url);
+                    }
+                    try (InternetProvider.StreamResponse response = chunkResponse) {
+                        if (response.code == 200 && validator != null) {
+                            // If-Range did not match, the chunks already stored belong to another version of the file
+                            state.reset();
+                            throw new IOException("Remote file changed during the download of " + url);
+                        }
+                        if (response.code != 206) {
+                            throw new IOException("Range request not honored (HTTP " + response.code + ") for " + url);
+                        }
+                        checkRange(response.getHeader("Content-Range"), start, length, total, url);
+                        writeChunk(response, channel, start, length, url);
+                    }
+                    state.markDone(chunk);
+                    return null;
+                }));
+            }
+            Exception failure = null;
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : new IOException(e.getCause());
+                    }
+                }
+            }
+            if (failure != null) {
+                state.save();
+                if (failure instanceof ConnectionFailure) {
+                    throw (ConnectionFailure) failure;
+                } else if (failure instanceof IOException) {
+                    // Local write failures and server misbehaviours, not transfer failures
+                    throw (IOException) failure;
+                } else if (failure instanceof RuntimeException) {
+                    throw (RuntimeException) failure;
+                }
+                throw new IOException(failure);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            state.save();
+            throw new ConnectionFailure("error.download.interrupted", e, url);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void writeChunk(InternetProvider.StreamResponse response, FileChannel channel, long start, long length, String url)
+            throws ConnectionFailure, IOException {
+        byte[] buffer = new byte[64 * 1024];
+        InputStream in = response.getBody();
+        long position = start;
+        long remaining = length;
+        int read;
+        while (remaining > 0 && (read = read(in, buffer, (int) Math.min(buffer.length, remaining), url)) != -1) {
+            ByteBuffer data = ByteBuffer.wrap(buffer, 0, read);
+            while (data.hasRemaining()) {
+                position += channel.write(data, position);
+            }
+            remaining -= read;
+        }
+        if (remaining > 0) {
+            throw new ConnectionFailure("error.download.interrupted",
+                    new EOFException("Range " + start + "-" + (start + length - 1) + " truncated for " + url), url);
+        }
+    }
+
+    private static void writeSequentially(InternetProvider.StreamResponse response, Path part, String url) throws ConnectionFailure, IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long written = 0;
+        try (InputStream in = response.getBody(); OutputStream out = Files.newOutputStream(part)) {
+            int read;
+            while ((read = read(in, buffer, buffer.length, url)) != -1) {
+                written += read;
+                if (written > FileDto.MAX_SIZE_BYTES) {
+                    throw new IOException("File exceeds " + FileDto.MAX_SIZE_BYTES + " bytes: " + url);
+                }
+                out.write(buffer, 0, read);
+            }
+        } catch (ConnectionFailure | IOException e) {
+            Files.deleteIfExists(part);
+            throw e;
+        }
+    }
+
+    /**
+     * Reads from the network, a failure there is a transfer failure whereas other I/O errors concern the local file.
+     */
+    private static int read(InputStream in, byte[] buffer, int length, String url) throws ConnectionFailure {
+        try {
+            return in.read(buffer, 0, length);
+        } catch (IOException e) {
+            throw new ConnectionFailure("error.download.interrupted", e, url);
+        }
+    }
+
+    private static long totalLength(String contentRange, String url) throws IOException {
+        Matcher matcher = contentRange == null ? null : CONTENT_RANGE.matcher(contentRange.trim());
+        if (matcher == null || !matcher.matches() || "*".equals(matcher.group(3))) {
+            throw new IOException("Invalid Content-Range '" + contentRange + "' for " + url);
+        }
+        long total = Long.parseLong(matcher.group(3));
+        checkSize(String.valueOf(total), url);
+        return total;
+    }
+
+    /**
+     * Checks that the server sent exactly the requested range of a file of the expected size.
+     */
+    private static void checkRange(String contentRange, long start, long length, long total, String url) throws IOException {
+        Matcher matcher = contentRange == null ? null : CONTENT_RANGE.matcher(contentRange.trim());
+        if (matcher == null || !matcher.matches()
+                || Long.parseLong(matcher.group(1)) != start
+                || Long.parseLong(matcher.group(2)) != start + length - 1
+                || !String.valueOf(total).equals(matcher.group(3))) {
+            throw new IOException("Unexpected Content-Range '" + contentRange + "' for bytes " + start + "-" + (start + length - 1)
+                    + "/" + total + " of " + url);
+        }
+    }
+
+    private static void checkSize(String contentLength, String url) throws IOException {
+        if (contentLength != null) {
+            try {
+                if (Long.parseLong(contentLength.trim()) > FileDto.MAX_SIZE_BYTES) {
+                    throw new IOException("File exceeds " + FileDto.MAX_SIZE_BYTES + " bytes (" + contentLength + "): " + url);
+                }
+            } catch (NumberFormatException e) {
+                // Unknown size, it will be checked while downloading
+            }
+        }
+    }
+
+    /**
+     * Returns the validator usable in {@code If-Range}, weak entity tags are not allowed there.
+     */
+    private static String validator(HttpHeaders headers) {
+        String etag = headers.get("ETag");
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return headers.get("Last-Modified");
+    }
+
+    private static Map<String, String> withValidator(Map<String, String> headers, String validator) {
+        if (validator == null) {
+            return headers;
+        }
+        Map<String, String> validatorHeaders = headers == null ? new HashMap<>() : new HashMap<>(headers);
+        validatorHeaders.put("If-Range", validator);
+        return validatorHeaders;
+    }
+
+    private static Map<String, String> withRange(Map<String, String> headers, long start, long end) {
+        Map<String, String> rangeHeaders = headers == null ? new HashMap<>() : new HashMap<>(headers);
+        rangeHeaders.put("Range", "bytes=" + start + "-" + end);
+        return rangeHeaders;
+    }
+
+    /**
+     * Completed chunks of a download, persisted next to the partial file.
+     */
+    private static final class DownloadState {
+
+        private final Path file;
+        private final long total;
+        private final long chunkSize;
+        private final String validator;
+        private final int chunkCount;
+        private final BitSet done;
+        private boolean reset;
+
+        private DownloadState(Path file, long total, long chunkSize, String validator, BitSet done) {
+            this.file = file;
+            this.total = total;
+            this.chunkSize = chunkSize;
+            this.validator = validator;
+            this.chunkCount = (int) ((total + chunkSize - 1) / chunkSize);
+            this.done = done;
+        }
+
+        /**
+         * Loads the state of a previous download, or starts a new one if it does not match the remote file.
+         */
+        private static DownloadState load(Path file, long total, long chunkSize, String validator) {
+            if (Files.isRegularFile(file)) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                    long savedTotal = in.readLong();
+                    long savedChunkSize = in.readLong();
+                    String savedValidator = in.readUTF();
+                    byte[] bits = new byte[in.readInt()];
+                    in.readFully(bits);
+                    if (savedTotal == total && savedChunkSize == chunkSize && savedValidator.equals(validator)) {
+                        return new DownloadState(file, total, chunkSize, validator, BitSet.valueOf(bits));
+                    }
+                } catch (IOException e) {
+                    // Unreadable state, start again
+                }
+            }
+            return new DownloadState(file, total, chunkSize, validator, new BitSet());
+        }
+
+        private synchronized boolean isDone(int chunk) {
+            return done.get(chunk);
+        }
+
+        private synchronized void markDone(int chunk) throws IOException {
+            if (!reset) {
+                done.set(chunk);
+            }
+            save();
+        }
+
+        /**
+         * Forgets all the completed chunks, the next download starts over.
+         */
+        private synchronized void reset() {
+            reset = true;
+            done.clear();
+        }
+
+        private synchronized void save() throws IOException {
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                byte[] bits = done.toByteArray();
+                out.writeLong(total);
+                out.writeLong(chunkSize);
+                out.writeUTF(validator);
+                out.writeInt(bits.length);
+                out.write(bits);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.tibudget.api.internet;
+
+import com.tibudget.api.InternetProvider;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * {@link InternetProvider} decorator throttling every request with a shared {@link DomainRateLimiter}.
+ * <p>
+ * Collectors do not need to change anything: the host wraps the provider given to
+ * {@link com.tibudget.api.CollectorPlugin#init} and all configurations hitting the same domain share its
+ * rate and concurrency limits. For streamed responses, the permit is released once the headers have been received.
+ */
+public class RateLimitedInternetProvider implements InternetProvider {
+
+    private final InternetProvider delegate;
+
+    private final DomainRateLimiter limiter;
+
+    public RateLimitedInternetProvider(InternetProvider delegate, DomainRateLimiter limiter) {
+        if (delegate == null || limiter == null) {
+            throw new IllegalArgumentException("delegate and limiter are mandatory");
+        }
+        this.delegate = delegate;
+        this.limiter = limiter;
+    }
+
+    @Override
+    public Response get(String url, Map<String, String> headers) throws IOException {
+        return execute(url, () -> delegate.get(url, headers));
+    }
+
+    @Override
+    public Response post(String url, String body, String contentType, Map<String, String> headers) throws IOException {
+        return execute(url, () -> delegate.post(url, body, contentType, headers));
+    }
+
+    @Override
+    public Response downloadFile(String url, Map<String, String> headers, String forceContentType) throws IOException {
+        return execute(url, () -> delegate.downloadFile(url, headers, forceContentType));
+    }
+
+    @Override
+    public StreamResponse getStream(String url, Map<String, String> headers) throws IOException {
+        return executeStream(url, () -> delegate.getStream(url, headers));
+    }
+
+    @Override
+    public StreamResponse postStream(String url, String body, String contentType, Map<String, String> headers) throws IOException {
+        return executeStream(url, () -> delegate.postStream(url, body, contentType, headers));
+    }
+
+    @Override
+    public InternetProvider withTimeout(Duration timeout) {
+        return new RateLimitedInternetProvider(delegate.withTimeout(timeout), limiter);
+    }
+
+    private Response execute(String url, Call<Response> call) throws IOException {
+        String domain = limiter.acquire(url);
+        int code = -1;
+        String retryAfter = null;
+        try {
+            Response response = call.execute();
+            code = response.code;
+            retryAfter = response.getHeader("Retry-After");
+            return response;
+        } finally {
+            limiter.release(domain, code, retryAfter);
+        }
+    }
+
+    private StreamResponse executeStream(String url, Call<StreamResponse> call) throws IOException {
+        String domain = limiter.acquire(url);
+        int code = -1;
+        String retryAfter = null;
+        try {
+            StreamResponse response = call.execute();
+            code = response.code;
+            retryAfter = response.getHeader("Retry-After");
+            return response;
+        } finally {
+            limiter.release(domain, code, retryAfter);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Call<T> {
+        T execute() throws IOException;
+    }
+}
@@ -0,0 +1,161 @@
+package com.tibudget.api.internet;
+
+import com.tibudget.api.HttpHeaders;
+import com.tibudget.api.InternetProvider;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+
+/**
+ * Binary format shared by {@link RecordingInternetProvider} and {@link ReplayInternetProvider}.
+ * <p>
+ * An archive is made of a header, the records one after the other, an index and a footer:
+ * <pre>
+ * "TIBUREC1"
+ * record*       : int code, str message, str method, str location, str protocol,
+ *                 int headerCount, (str name, str value)*, str body, long payloadLength (-1 if none), byte[] payload
+ * index         : int keyCount, (str key, int recordCount, long offset*)*
+ * footer        : long indexOffset, "TIBUIDX1"
+ * </pre>
+ * where {@code str} is an int length (-1 for null) followed by the UTF-8 bytes. Repeated headers are written once per
+ * value. The payload holds the response body as received, or the content of the downloaded file in which case the
+ * body is the original file path.
+ * <p>
+ * Requests are identified by their method, URL and body only: request headers are not part of the key.
+ */
+final class RecordArchive {
+
+    static final byte[] HEADER_MAGIC = "TIBUREC1".getBytes(StandardCharsets.US_ASCII);
+
+    static final byte[] FOOTER_MAGIC = "TIBUIDX1".getBytes(StandardCharsets.US_ASCII);
+
+    static final int FOOTER_LENGTH = Long.BYTES + FOOTER_MAGIC.length;
+
+    private RecordArchive() {
+    }
+
+    /**
+     * Builds the key identifying a request, POST bodies are hashed to keep the index small. Request headers are
+     * deliberately left out, so that a replay does not depend on cookies or tokens that change at every session.
+     */
+    static String key(String method, String url, String body) {
+        if (body == null) {
+            return method + ' ' + url;
+        }
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(body.getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder(method).append(' ').append(url).append(' ');
+            for (byte b : hash) {
+                key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    static byte[] encode(int code, String message, String method, String location, String protocol,
+                         HttpHeaders headers, String body, byte[] payload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 + (payload == null ? 0 : payload.length));
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(code);
+        writeString(out, message);
+        writeString(out, method);
+        writeString(out, location);
+        writeString(out, protocol);
+        out.writeInt(headers == null ? 0 : headers.size());
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers) {
+                writeString(out, header.getKey());
+                writeString(out, header.getValue());
+            }
+        }
+        writeString(out, body);
+        if (payload == null) {
+            out.writeLong(-1);
+        } else {
+            out.writeLong(payload.length);
+            out.write(payload);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A decoded record, the payload is a view on the archive and is not copied.
+     */
+    static final class Record {
+        final InternetProvider.Response response;
+        final ByteBuffer payload;
+
+        private Record(InternetProvider.Response response, ByteBuffer payload) {
+            this.response = response;
+            this.payload = payload;
+        }
+
+        /**
+         * Returns the recorded response with its body, copied out of the archive when it has been recorded as bytes.
+         */
+        InternetProvider.Response toResponse() {
+            if (response.hasBody() || payload == null) {
+                return response;
+            }
+            byte[] bytes = new byte[payload.remaining()];
+            payload.duplicate().get(bytes);
+            return InternetProvider.Response.ofBytes(response.code, response.message, response.method, response.location,
+                    response.protocol, bytes, response.getHeaders());
+        }
+
+        static Record decode(ByteBuffer archive, long offset) {
+            ByteBuffer buffer = archive.duplicate();
+            buffer.position((int) offset);
+            int code = buffer.getInt();
+            String message = readString(buffer);
+            String method = readString(buffer);
+            String location = readString(buffer);
+            String protocol = readString(buffer);
+            int headerCount = buffer.getInt();
+            HttpHeaders headers = new HttpHeaders();
+            for (int i = 0; i < headerCount; i++) {
+                headers.add(readString(buffer), readString(buffer));
+            }
+            String body = readString(buffer);
+            long payloadLength = buffer.getLong();
+            ByteBuffer payload = null;
+            if (payloadLength >= 0) {
+                payload = buffer.slice();
+                payload.limit((int) payloadLength);
+            }
+            InternetProvider.Response response = body == null
+                    ? InternetProvider.Response.ofBytes(code, message, method, location, protocol, null, headers)
+                    : new InternetProvider.Response(code, message, method, location, protocol, body, headers.toMap());
+            return new Record(response, payload);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.tibudget.api.internet;
+
+import com.tibudget.api.InternetProvider;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link InternetProvider} decorator recording every exchange into an archive that can be served later by
+ * {@link ReplayInternetProvider}.
+ * <p>
+ * Responses are recorded in call order as raw bytes, including the content of downloaded files and of streamed bodies.
+ * Streamed bodies are fully read before being handed back to the collector while recording.
+ * Every value of repeated response headers is kept. Requests are identified by their method, URL and body: their
+ * headers are not recorded, so two requests differing only by their headers share the same recorded responses.
+ * The archive is only readable once {@link #close()} has written its index.
+ * <p>
+ * Recorded archives contain everything the provider answered, including personal data: they must be handled
+ * with the same care as the credentials used to produce them.
+ */
+public class RecordingInternetProvider implements InternetProvider, Closeable {
+
+    private final InternetProvider delegate;
+
+    /** Instance owning the archive, this one unless created by {@link #withTimeout(Duration)}. */
+    private final RecordingInternetProvider recorder;
+
+    private final FileChannel channel;
+
+    private final Map<String, List<Long>> index = new LinkedHashMap<>();
+
+    private boolean closed;
+
+    /**
+     * Creates a recorder, an existing archive is replaced.
+     *
+     * @param delegate the provider executing the requests
+     * @param archive  the archive to create
+     * @throws IOException if the archive cannot be created
+     */
+    public RecordingInternetProvider(InternetProvider delegate, Path archive) throws IOException {
+        if (delegate == null || archive == null) {
+            throw new IllegalArgumentException("delegate and archive are mandatory");
+        }
+        this.delegate = delegate;
+        this.recorder = this;
+        this.channel = FileChannel.open(archive, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        write(ByteBuffer.wrap(RecordArchive.HEADER_MAGIC));
+    }
+
+    /**
+     * Creates a view of a recorder sending its requests through another provider, into the same archive.
+     */
+    private RecordingInternetProvider(RecordingInternetProvider recorder, InternetProvider delegate) {
+        this.delegate = delegate;
+        this.recorder = recorder;
+        this.channel = recorder.channel;
+    }
+
+    @Override
+    public Response get(String url, Map<String, String> headers) throws IOException {
+        Response response = delegate.get(url, headers);
+        recorder.record(RecordArchive.key("GET", url, null), null, response, response.getBodyBytes());
+        return response;
+    }
+
+    @Override
+    public Response post(String url, String body, String contentType, Map<String, String> headers) throws IOException {
+        Response response = delegate.post(url, body, contentType, headers);
+        recorder.record(RecordArchive.key("POST", url, body), null, response, response.getBodyBytes());
+        return response;
+    }
+
+    @Override
+    public Response downloadFile(String url, Map<String, String> headers, String forceContentType) throws IOException {
+        Response response = delegate.downloadFile(url, headers, forceContentType);
+        String path = response.getBody();
+        byte[] payload = path != null && Files.isRegularFile(Paths.get(path)) ? Files.readAllBytes(Paths.get(path)) : null;
+        recorder.record(RecordArchive.key("DOWNLOAD", url, null), response.getBody(), response, payload);
+        return response;
+    }
+
+    @Override
+    public StreamResponse getStream(String url, Map<String, String> headers) throws IOException {
+        return recordStream(RecordArchive.key("GET", url, null), delegate.getStream(url, headers));
+    }
+
+    @Override
+    public StreamResponse postStream(String url, String body, String contentType, Map<String, String> headers) throws IOException {
+        return recordStream(RecordArchive.key("POST", url, body), delegate.postStream(url, body, contentType, headers));
+    }
+
+    /**
+     * Returns a view of this recorder, writing to the same archive, whose requests are bounded by the given timeout.
+     */
+    @Override
+    public InternetProvider withTimeout(Duration timeout) {
+        return new RecordingInternetProvider(recorder, delegate.withTimeout(timeout));
+    }
+
+    /**
+     * Writes the index and closes the archive.
+     *
+     * @throws IOException if the index cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (recorder != this) {
+            recorder.close();
+            return;
+        }
+        synchronized (this) {
+            closeArchive();
+        }
+    }
+
+    private void closeArchive() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            long indexOffset = channel.position();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(index.size());
+            for (Map.Entry<String, List<Long>> entry : index.entrySet()) {
+                RecordArchive.writeString(out, entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (long offset : entry.getValue()) {
+                    out.writeLong(offset);
+                }
+            }
+            out.writeLong(indexOffset);
+            out.write(RecordArchive.FOOTER_MAGIC);
+            out.flush();
+            write(ByteBuffer.wrap(bytes.toByteArray()));
+        } finally {
+            channel.close();
+        }
+    }
+
+    private StreamResponse recordStream(String key, StreamResponse response) throws IOException {
+        byte[] payload;
+        try (InputStream in = response.getBody()) {
+            payload = in.readAllBytes();
+        }
+        recorder.record(key, null, Response.ofBytes(response.code, response.message, response.method, response.location, response.protocol, null, response.getHeaders()), payload);
+        return new StreamResponse(response.code, response.message, response.method, response.location, response.protocol,
+                response.headers, new ByteArrayInputStream(payload));
+    }
+
+    private synchronized void record(String key, String body, Response response, byte[] payload) throws IOException {
+        if (closed) {
+            throw new IOException("Recording archive is closed");
+        }
+        byte[] record = RecordArchive.encode(response.code, response.message, response.method, response.location,
+                response.protocol, response.getHeaders(), body, payload);
+        index.computeIfAbsent(key, k -> new ArrayList<>()).add(channel.position());
+        write(ByteBuffer.wrap(record));
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
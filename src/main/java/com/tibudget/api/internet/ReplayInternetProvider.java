@@ -0,0 +1,178 @@
+package com.tibudget.api.internet;
+
+import com.tibudget.api.InternetProvider;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link InternetProvider} serving the exchanges stored by {@link RecordingInternetProvider}, without any network access.
+ * <p>
+ * The archive is memory-mapped and responses are decoded on demand, which makes it suitable to benchmark and
+ * regression-test the parsing of a {@link com.tibudget.api.CollectorPlugin}. When the same request has been
+ * recorded several times, the recorded responses are served in order and the last one is repeated.
+ * Request headers are ignored when looking a response up, only the method, URL and body are compared.
+ * Requests that have not been recorded fail with an {@link IOException}.
+ * <p>
+ * Downloaded files are written to new temporary files, as {@link InternetProvider#downloadFile(String, Map, String)} does.
+ */
+public class ReplayInternetProvider implements InternetProvider {
+
+    private final MappedByteBuffer archive;
+
+    private final Map<String, long[]> index = new HashMap<>();
+
+    private final Map<String, AtomicInteger> cursors = new HashMap<>();
+
+    /**
+     * Opens an archive.
+     *
+     * @param archive the archive written by {@link RecordingInternetProvider}
+     * @throws IOException if the archive cannot be read or is not complete
+     */
+    public ReplayInternetProvider(Path archive) throws IOException {
+        try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE || size < RecordArchive.HEADER_MAGIC.length + RecordArchive.FOOTER_LENGTH) {
+                throw new IOException("Invalid archive size " + size + ": " + archive);
+            }
+            this.archive = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        byte[] magic = new byte[RecordArchive.HEADER_MAGIC.length];
+        ByteBuffer buffer = this.archive.duplicate();
+        buffer.get(magic);
+        if (!Arrays.equals(magic, RecordArchive.HEADER_MAGIC)) {
+            throw new IOException("Not a recording archive: " + archive);
+        }
+        buffer.position(buffer.limit() - RecordArchive.FOOTER_LENGTH);
+        long indexOffset = buffer.getLong();
+        buffer.get(magic);
+        if (!Arrays.equals(magic, RecordArchive.FOOTER_MAGIC)) {
+            throw new IOException("Recording archive has not been closed properly: " + archive);
+        }
+        buffer.position((int) indexOffset);
+        int keyCount = buffer.getInt();
+        for (int i = 0; i < keyCount; i++) {
+            String key = RecordArchive.readString(buffer);
+            long[] offsets = new long[buffer.getInt()];
+            for (int j = 0; j < offsets.length; j++) {
+                offsets[j] = buffer.getLong();
+            }
+            index.put(key, offsets);
+            cursors.put(key, new AtomicInteger());
+        }
+    }
+
+    @Override
+    public Response get(String url, Map<String, String> headers) throws IOException {
+        return next(RecordArchive.key("GET", url, null)).toResponse();
+    }
+
+    @Override
+    public Response post(String url, String body, String contentType, Map<String, String> headers) throws IOException {
+        return next(RecordArchive.key("POST", url, body)).toResponse();
+    }
+
+    @Override
+    public Response downloadFile(String url, Map<String, String> headers, String forceContentType) throws IOException {
+        RecordArchive.Record record = next(RecordArchive.key("DOWNLOAD", url, null));
+        Response recorded = record.response;
+        if (record.payload == null) {
+            return recorded;
+        }
+        File file = File.createTempFile("replay", ".tmp");
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            ByteBuffer payload = record.payload.duplicate();
+            while (payload.hasRemaining()) {
+                channel.write(payload);
+            }
+        }
+        return new Response(recorded.code, recorded.message, recorded.method, recorded.location, recorded.protocol,
+                file.getAbsolutePath(), recorded.headers);
+    }
+
+    @Override
+    public StreamResponse getStream(String url, Map<String, String> headers) throws IOException {
+        return stream(next(RecordArchive.key("GET", url, null)));
+    }
+
+    @Override
+    public StreamResponse postStream(String url, String body, String contentType, Map<String, String> headers) throws IOException {
+        return stream(next(RecordArchive.key("POST", url, body)));
+    }
+
+    /**
+     * Returns this provider: replayed responses are read from the archive, there is no request to bound.
+     */
+    @Override
+    public InternetProvider withTimeout(Duration timeout) {
+        return this;
+    }
+
+    /**
+     * Makes every recorded exchange available again from its first response.
+     */
+    public void rewind() {
+        for (AtomicInteger cursor : cursors.values()) {
+            cursor.set(0);
+        }
+    }
+
+    private RecordArchive.Record next(String key) throws IOException {
+        long[] offsets = index.get(key);
+        if (offsets == null) {
+            throw new IOException("No recorded response for " + key);
+        }
+        int position = cursors.get(key).getAndUpdate(i -> Math.min(i + 1, offsets.length - 1));
+        return RecordArchive.Record.decode(archive, offsets[position]);
+    }
+
+    private static StreamResponse stream(RecordArchive.Record record) {
+        Response response = record.response;
+        InputStream body = record.payload == null ? StreamResponse.of(response).getBody() : new ByteBufferInputStream(record.payload.duplicate());
+        return new StreamResponse(response.code, response.message, response.method, response.location, response.protocol, response.headers, body);
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
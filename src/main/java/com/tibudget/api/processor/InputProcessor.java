@@ -0,0 +1,307 @@
+package com.tibudget.api.processor;
+
+import com.tibudget.api.Input;
+import com.tibudget.api.InputDescriptor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Annotation processor generating an {@link InputDescriptor} for each plugin class declaring {@link Input} fields.
+ * <p>
+ * The processor is opt-in: it is not registered as a service, so collectors compiled with this library on their
+ * classpath are not affected unless they enable it explicitly, with {@code javac -processor
+ * com.tibudget.api.processor.InputProcessor} or, with Maven, in the compiler plugin configuration:
+ * <pre>{@code
+ * <annotationProcessors>
+ *     <annotationProcessor>com.tibudget.api.processor.InputProcessor</annotationProcessor>
+ * </annotationProcessors>
+ * }</pre>
+ * Once enabled, for each field, the processor checks that a getter ({@code getX}, or {@code isX} for a
+ * {@code boolean}) and a setter ({@code setX}) exist, that the setter only throws
+ * {@link com.tibudget.api.exceptions.ParameterError} or unchecked exceptions, that the type can be converted from a
+ * form value, and that {@link Input#showFieldset()} and {@link Input#hideFieldset()} are only used on booleans.
+ * Any violation is reported as a compilation error.
+ * <p>
+ * Fields are ordered by {@link Input#order()}, fields without order coming last, then by declaration order,
+ * inherited fields first.
+ */
+public class InputProcessor extends AbstractProcessor {
+
+    private static final Set<String> SUPPORTED_TYPES = new HashSet<>(Arrays.asList(
+            String.class.getName(), Boolean.class.getName(), Integer.class.getName(), Long.class.getName(),
+            Double.class.getName(), Float.class.getName(), Short.class.getName(), Byte.class.getName(),
+            Character.class.getName(), java.math.BigDecimal.class.getName()));
+
+    private Elements elements;
+
+    private Types types;
+
+    private Messager messager;
+
+    private Filer filer;
+
+    private final Set<String> generated = new HashSet<>();
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        this.elements = processingEnv.getElementUtils();
+        this.types = processingEnv.getTypeUtils();
+        this.messager = processingEnv.getMessager();
+        this.filer = processingEnv.getFiler();
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(Input.class.getName());
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<TypeElement> owners = new LinkedHashSet<>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(Input.class)) {
+            if (element.getKind() == ElementKind.FIELD) {
+                owners.add((TypeElement) element.getEnclosingElement());
+            }
+        }
+        for (TypeElement owner : owners) {
+            if (generated.add(owner.getQualifiedName().toString())) {
+                generate(owner);
+            }
+        }
+        return false;
+    }
+
+    private void generate(TypeElement owner) {
+        if (owner.getModifiers().contains(Modifier.PRIVATE)
+                || (owner.getNestingKind() == NestingKind.MEMBER && !owner.getModifiers().contains(Modifier.STATIC))
+                || owner.getNestingKind() == NestingKind.LOCAL || owner.getNestingKind() == NestingKind.ANONYMOUS) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "A class with @Input fields must be a top level or static nested class, not private", owner);
+            return;
+        }
+        String packageName = elements.getPackageOf(owner).getQualifiedName().toString();
+        String binaryName = elements.getBinaryName(owner).toString();
+        String descriptorName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1)) + InputDescriptor.SUFFIX;
+        String pluginType = types.erasure(owner.asType()).toString();
+
+        List<VariableElement> fields = collectFields(owner);
+        StringBuilder body = new StringBuilder();
+        boolean valid = true;
+        for (VariableElement field : fields) {
+            valid &= appendField(body, owner, packageName, pluginType, field);
+        }
+        if (!valid) {
+            return;
+        }
+
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("@javax.annotation.processing.Generated(\"").append(InputProcessor.class.getName()).append("\")\n")
+                .append("public final class ").append(descriptorName)
+                .append(" extends com.tibudget.api.InputDescriptor<").append(pluginType).append("> {\n\n")
+                .append("    public ").append(descriptorName).append("() {\n")
+                .append("        super(").append(pluginType).append(".class, fields());\n")
+                .append("    }\n\n")
+                .append("    private static java.util.List<com.tibudget.api.InputField<").append(pluginType).append(">> fields() {\n")
+                .append("        java.util.List<com.tibudget.api.InputField<").append(pluginType).append(">> fields = new java.util.ArrayList<>();\n")
+                .append(body)
+                .append("        return fields;\n")
+                .append("    }\n")
+                .append("}\n");
+        String fileName = packageName.isEmpty() ? descriptorName : packageName + "." + descriptorName;
+        try (Writer writer = filer.createSourceFile(fileName, owner).openWriter()) {
+            writer.write(source.toString());
+        } catch (IOException e) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "Cannot write " + fileName + ": " + e.getMessage(), owner);
+        }
+    }
+
+    /**
+     * Returns the {@link Input} fields of a class and its superclasses, sorted in display order.
+     */
+    private List<VariableElement> collectFields(TypeElement owner) {
+        Deque<TypeElement> hierarchy = new ArrayDeque<>();
+        for (TypeElement type = owner; type != null; type = superclassOf(type)) {
+            hierarchy.push(type);
+        }
+        List<VariableElement> fields = new ArrayList<>();
+        for (TypeElement type : hierarchy) {
+            for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+                if (field.getAnnotation(Input.class) != null) {
+                    fields.add(field);
+                }
+            }
+        }
+        // List.sort is stable: declaration order is kept among equal orders
+        fields.sort(Comparator.comparingInt(field -> {
+            int order = field.getAnnotation(Input.class).order();
+            return order < 0 ? Integer.MAX_VALUE : order;
+        }));
+        return fields;
+    }
+
+    private TypeElement superclassOf(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        if (superclass.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        TypeElement element = (TypeElement) ((DeclaredType) superclass).asElement();
+        return element.getQualifiedName().contentEquals(Object.class.getName()) ? null : element;
+    }
+
+    private boolean appendField(StringBuilder body, TypeElement owner, String packageName, String pluginType, VariableElement field) {
+        Input input = field.getAnnotation(Input.class);
+        String name = field.getSimpleName().toString();
+        TypeMirror type = field.asType();
+        String boxedType;
+        String classLiteral;
+        if (type.getKind().isPrimitive()) {
+            boxedType = types.boxedClass((javax.lang.model.type.PrimitiveType) type).getQualifiedName().toString();
+            classLiteral = type.toString() + ".class";
+        } else if (type.getKind() == TypeKind.DECLARED
+                && (SUPPORTED_TYPES.contains(types.erasure(type).toString())
+                || ((DeclaredType) type).asElement().getKind() == ElementKind.ENUM)) {
+            boxedType = types.erasure(type).toString();
+            classLiteral = boxedType + ".class";
+        } else {
+            messager.printMessage(Diagnostic.Kind.ERROR, "Unsupported @Input type " + type, field);
+            return false;
+        }
+        boolean isBoolean = type.getKind() == TypeKind.BOOLEAN || Boolean.class.getName().equals(boxedType);
+        if (!isBoolean && (input.showFieldset().length > 0 || input.hideFieldset().length > 0)) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "showFieldset and hideFieldset can only be used on boolean fields", field);
+            return false;
+        }
+
+        String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        ExecutableElement getter = findMethod(owner, packageName, "get" + capitalized, null);
+        if (getter == null && type.getKind() == TypeKind.BOOLEAN) {
+            getter = findMethod(owner, packageName, "is" + capitalized, null);
+        }
+        if (getter == null) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "No accessible getter found for @Input field " + name, field);
+            return false;
+        }
+        ExecutableElement setter = findMethod(owner, packageName, "set" + capitalized, type);
+        if (setter == null) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "No accessible setter found for @Input field " + name, field);
+            return false;
+        }
+        TypeMirror parameterError = elements.getTypeElement("com.tibudget.api.exceptions.ParameterError").asType();
+        TypeMirror runtimeException = elements.getTypeElement(RuntimeException.class.getName()).asType();
+        TypeMirror error = elements.getTypeElement(Error.class.getName()).asType();
+        for (TypeMirror thrown : setter.getThrownTypes()) {
+            if (!types.isAssignable(thrown, parameterError) && !types.isAssignable(thrown, runtimeException) && !types.isAssignable(thrown, error)) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "The setter of an @Input field can only throw ParameterError: " + thrown, setter);
+                return false;
+            }
+        }
+
+        body.append("        fields.add(new com.tibudget.api.InputField<").append(pluginType).append(">(")
+                .append(literal(name)).append(", ").append(classLiteral).append(", ")
+                .append(input.required()).append(", ").append(input.size()).append(", ").append(input.maxlen()).append(", ")
+                .append(input.order()).append(", ").append(input.password()).append(", ")
+                .append(literal(input.fieldset())).append(", ")
+                .append(literals(input.hideFieldset())).append(", ").append(literals(input.showFieldset())).append(") {\n")
+                .append("            @Override\n")
+                .append("            public Object get(").append(pluginType).append(" plugin) {\n")
+                .append("                return plugin.").append(getter.getSimpleName()).append("();\n")
+                .append("            }\n\n")
+                .append("            @Override\n")
+                .append("            public void set(").append(pluginType).append(" plugin, String value) throws com.tibudget.api.exceptions.ParameterError {\n")
+                .append("                plugin.").append(setter.getSimpleName()).append("((").append(boxedType).append(") parse(value));\n")
+                .append("            }\n")
+                .append("        });\n");
+        return true;
+    }
+
+    /**
+     * Finds a non static method callable from the generated class, without parameter if {@code parameterType} is
+     * {@code null}, with a single parameter of that type otherwise.
+     */
+    private ExecutableElement findMethod(TypeElement owner, String packageName, String name, TypeMirror parameterType) {
+        for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(owner))) {
+            if (!method.getSimpleName().contentEquals(name) || method.getModifiers().contains(Modifier.STATIC)) {
+                continue;
+            }
+            List<? extends VariableElement> parameters = method.getParameters();
+            boolean matches = parameterType == null
+                    ? parameters.isEmpty()
+                    : parameters.size() == 1 && types.isSameType(parameters.get(0).asType(), parameterType);
+            if (matches && isAccessible(method, packageName)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private boolean isAccessible(ExecutableElement method, String packageName) {
+        Set<Modifier> modifiers = method.getModifiers();
+        if (modifiers.contains(Modifier.PUBLIC)) {
+            return true;
+        }
+        return !modifiers.contains(Modifier.PRIVATE)
+                && elements.getPackageOf(method).getQualifiedName().contentEquals(packageName);
+    }
+
+    private static String literals(String[] values) {
+        StringBuilder sb = new StringBuilder("new String[]{");
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(literal(values[i]));
+        }
+        return sb.append('}').toString();
+    }
+
+    private static String literal(String value) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
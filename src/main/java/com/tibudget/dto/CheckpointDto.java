@@ -0,0 +1,180 @@
+package com.tibudget.dto;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * Progress of a collect for one account, saved while collecting so that an interrupted collect can resume.
+ * <p>
+ * A checkpoint tells what has already been emitted for an account: the next collect attempt receives it back
+ * and can skip the corresponding work.
+ */
+public class CheckpointDto implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * UUID of the account this checkpoint applies to, {@code null} for a checkpoint covering the whole configuration.
+     */
+    private String accountUuid;
+
+    /**
+     * Opaque position defined by the collector, for example a page number or a continuation token from the provider.
+     */
+    private String cursor;
+
+    /**
+     * Date of the last emitted transaction.
+     */
+    private Date lastTransactionDate;
+
+    /**
+     * Identifier of the last emitted transaction, see {@link TransactionDto#getId()}.
+     */
+    private String lastTransactionId;
+
+    /**
+     * Number of transactions already emitted for this account during the current sync.
+     */
+    private long emittedCount;
+
+    /**
+     * Creates an empty checkpoint.
+     */
+    public CheckpointDto() {
+        super();
+    }
+
+    /**
+     * Creates a checkpoint.
+     *
+     * @param accountUuid the account UUID, {@code null} for the whole configuration
+     * @param cursor the collector-defined position
+     * @param lastTransactionDate the date of the last emitted transaction
+     * @param lastTransactionId the identifier of the last emitted transaction
+     * @param emittedCount the number of transactions already emitted
+     */
+    public CheckpointDto(String accountUuid, String cursor, Date lastTransactionDate, String lastTransactionId, long emittedCount) {
+        this();
+        this.accountUuid = accountUuid;
+        this.cursor = cursor;
+        this.lastTransactionDate = lastTransactionDate;
+        this.lastTransactionId = lastTransactionId;
+        this.emittedCount = emittedCount;
+    }
+
+    /**
+     * Returns the account UUID.
+     *
+     * @return the account UUID, {@code null} for the whole configuration
+     */
+    public String getAccountUuid() {
+        return accountUuid;
+    }
+
+    /**
+     * Sets the account UUID.
+     *
+     * @param accountUuid the account UUID, {@code null} for the whole configuration
+     */
+    public void setAccountUuid(String accountUuid) {
+        this.accountUuid = accountUuid;
+    }
+
+    /**
+     * Returns the collector-defined position.
+     *
+     * @return the cursor
+     */
+    public String getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Sets the collector-defined position.
+     *
+     * @param cursor the cursor
+     */
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    /**
+     * Returns the date of the last emitted transaction.
+     *
+     * @return the date of the last emitted transaction
+     */
+    public Date getLastTransactionDate() {
+        return lastTransactionDate;
+    }
+
+    /**
+     * Sets the date of the last emitted transaction.
+     *
+     * @param lastTransactionDate the date of the last emitted transaction
+     */
+    public void setLastTransactionDate(Date lastTransactionDate) {
+        this.lastTransactionDate = lastTransactionDate;
+    }
+
+    /**
+     * Returns the identifier of the last emitted transaction.
+     *
+     * @return the identifier of the last emitted transaction
+     */
+    public String getLastTransactionId() {
+        return lastTransactionId;
+    }
+
+    /**
+     * Sets the identifier of the last emitted transaction.
+     *
+     * @param lastTransactionId the identifier of the last emitted transaction
+     */
+    public void setLastTransactionId(String lastTransactionId) {
+        this.lastTransactionId = lastTransactionId;
+    }
+
+    /**
+     * Returns the number of transactions already emitted.
+     *
+     * @return the number of emitted transactions
+     */
+    public long getEmittedCount() {
+        return emittedCount;
+    }
+
+    /**
+     * Sets the number of transactions already emitted.
+     *
+     * @param emittedCount the number of emitted transactions
+     */
+    public void setEmittedCount(long emittedCount) {
+        this.emittedCount = emittedCount;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CheckpointDto)) return false;
+        CheckpointDto that = (CheckpointDto) o;
+        return emittedCount == that.emittedCount && Objects.equals(accountUuid, that.accountUuid) && Objects.equals(cursor, that.cursor) && Objects.equals(lastTransactionDate, that.lastTransactionDate) && Objects.equals(lastTransactionId, that.lastTransactionId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(accountUuid, cursor, lastTransactionDate, lastTransactionId, emittedCount);
+    }
+
+    @Override
+    public String toString() {
+        return "CheckpointDto{" +
+                "accountUuid='" + accountUuid + '\'' +
+                ", cursor='" + cursor + '\'' +
+                ", lastTransactionDate=" + lastTransactionDate +
+                ", lastTransactionId='" + lastTransactionId + '\'' +
+                ", emittedCount=" + emittedCount +
+                '}';
+    }
+}
@@ -16,7 +16,7 @@ public class FileDto implements Serializable {
     private static final long serialVersionUID = 1L;
 
     /** Maximum allowed file size in bytes. */
-    private static final int MAX_SIZE_BYTES = 52_428_800;
+    public static final int MAX_SIZE_BYTES = 52_428_800;
 
     /**
      * Defines the functional type of a file and how it should be handled by the application.